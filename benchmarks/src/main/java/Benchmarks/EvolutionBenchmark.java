@@ -0,0 +1,69 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Base.CGP;
+import Base.Individual;
+
+/*** End to end time to solution of testEvolve(). Every measurement iteration is one complete run,
+ * so the score is the mean (and spread) over that many runs. Run i is seeded with i, so every trial sees
+ * the same runs */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class EvolutionBenchmark {
+	
+	@Param({"ONE_BIT_ADDER", "PARITY"}) // TWO_BIT_MULTIPLIER takes seconds per run, pass it with -p when needed
+	public Problems.Problem problem;
+	
+	@Param({"4"})
+	public int inputs;
+	
+	@Param({"4", "10"})
+	public int cols;
+	
+	@Param({"2"})
+	public int levelsBack;
+	
+	@Param({"BIT_PARALLEL"})
+	public Problems.Evaluation evaluation;
+	
+	@Param({"FIXED", "FIXED_LOW", "ONE_FIFTH_RULE", "SELF_ADAPTIVE", "STAGNATION_BURST"})
+	public Problems.MutationRates mutationRates;
+	
+	private CGP cgp = null;
+	private long seed = 0;
+	
+	@Setup(Level.Trial)
+	public void setUp() {
+		cgp = Problems.create(problem, inputs, cols, levelsBack, evaluation);
+		cgp.setConsoleLogging(false); // keep the progress log out of the measurement
+		cgp.setMutationRateController(Problems.mutationRates(mutationRates));
+	}
+	
+	@Setup(Level.Iteration)
+	public void seed() {
+		cgp.setSeed(seed++);
+	}
+	
+	@Benchmark
+	public Individual timeToSolution() {
+		return cgp.testEvolve();
+	}
+}
@@ -0,0 +1,88 @@
+package Benchmarks;
+
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Base.CGP;
+import Base.Individual;
+import Base.Node;
+
+/*** Hot paths of a (1+lambda) generation: evaluation, cloning, mutation and the active node lookup.
+ * 
+ * Run a subset with e.g.: java -jar benchmarks/target/benchmarks.jar IndividualBenchmark -p problem=PARITY -p inputs=12 */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndividualBenchmark {
+	
+	@Param({"ONE_BIT_ADDER", "TWO_BIT_MULTIPLIER", "PARITY", "MULTIPLIER"})
+	public Problems.Problem problem;
+	
+	@Param({"8", "12"}) // test set size of the generated problems is 2^inputs
+	public int inputs;
+	
+	@Param({"10", "100", "1000"})
+	public int cols;
+	
+	@Param({"2", "10"})
+	public int levelsBack;
+	
+	@Param({"INTERPRETED", "BIT_PARALLEL"})
+	public Problems.Evaluation evaluation;
+	
+	private Individual individual = null;
+	private Individual scratch = null; // mutated in place by the mutation benchmark
+	
+	@Setup
+	public void setUp() {
+		CGP cgp = Problems.create(problem, inputs, cols, levelsBack, evaluation);
+		individual = cgp.newIndividual();
+		individual.setCGPSettings(cgp);
+		individual.initWithCGPSettings();
+		individual.calculateFitness();
+		scratch = individual.clone();
+	}
+	
+	@Benchmark
+	public int calculateFitness() {
+		return individual.calculateFitness();
+	}
+	
+	@Benchmark
+	public Individual cloneIndividual() {
+		return individual.clone();
+	}
+	
+	@Benchmark
+	public Individual mutate() {
+		scratch.mutate(0.20);
+		return scratch;
+	}
+	
+	@Benchmark
+	public Individual cloneAndMutate() {
+		Individual offspring = individual.clone();
+		offspring.mutate(0.20);
+		return offspring;
+	}
+	
+	@Benchmark
+	public Stack<Node> getNodesToProcess() {
+		return individual.getNodesToProcess();
+	}
+}
@@ -0,0 +1,157 @@
+package Benchmarks;
+
+import Base.BitParallelEvaluator;
+import Base.BooleanFunction;
+import Base.CGP;
+import Base.FixedRate;
+import Base.MutationRateController;
+import Base.OneFifthSuccessRule;
+import Base.SelfAdaptiveRate;
+import Base.StagnationBurst;
+import Examples.OneBitAdder;
+import Examples.TwoBitMultiplier;
+
+/*** Benchmark fixtures: the example circuits plus generated n-bit parity and multiplier problems */
+public final class Problems {
+	
+	public static enum Problem {
+		ONE_BIT_ADDER, // 2 inputs, fixed
+		TWO_BIT_MULTIPLIER, // 4 inputs, fixed
+		PARITY, // n inputs, 2^n test cases
+		MULTIPLIER // n inputs (two n/2 bit operands), 2^n test cases
+	}
+	
+	public static enum Evaluation {
+		INTERPRETED,
+		BIT_PARALLEL
+	}
+	
+	public static enum MutationRates {
+		FIXED, // the default 0.20
+		FIXED_LOW, // 0.05, the rate the adaptive controllers start from
+		ONE_FIFTH_RULE,
+		SELF_ADAPTIVE,
+		STAGNATION_BURST
+	}
+	
+	/*** Builds a problem with the given grid width and levels back. inputs only applies to the generated problems */
+	public static CGP create(Problem problem, int inputs, int cols, int levelsBack, Evaluation evaluation) {
+		CGP cgp;
+		Object[][][] testCases;
+		switch(problem) {
+			case ONE_BIT_ADDER:
+				cgp = new OneBitAdder();
+				cgp.init(2, cols, levelsBack, cgp.getGenerationSize());
+				testCases = multiplierOrAdderTruthTable(1, true);
+				break;
+			case TWO_BIT_MULTIPLIER:
+				cgp = new TwoBitMultiplier();
+				cgp.init(4, cols, levelsBack, cgp.getGenerationSize());
+				testCases = multiplierOrAdderTruthTable(2, false);
+				break;
+			case PARITY:
+				cgp = new GateSet(inputs, cols, levelsBack);
+				testCases = parityTruthTable(inputs);
+				for(int row = 1; row < inputs; row++) {
+					cgp.setOutputsToIgnore(row); // only the first output carries the parity bit
+				}
+				break;
+			default:
+				cgp = new GateSet(inputs, cols, levelsBack);
+				testCases = multiplierOrAdderTruthTable(inputs / 2, false);
+		}
+		
+		cgp.setFitnessTestCases(testCases[0], testCases[1]);
+		if(evaluation == Evaluation.BIT_PARALLEL) {
+			cgp.setFitnessEvaluator(new BitParallelEvaluator());
+		}
+		return cgp;
+	}
+	
+	/*** A fresh controller of the given kind, with settings that suit the generated problems */
+	public static MutationRateController mutationRates(MutationRates rates) {
+		switch(rates) {
+			case ONE_FIFTH_RULE:
+				return new OneFifthSuccessRule(0.05, 1.2);
+			case SELF_ADAPTIVE:
+				return new SelfAdaptiveRate(0.05, 0.3);
+			case STAGNATION_BURST:
+				return new StagnationBurst(0.05, 0.20, 200, 10);
+			case FIXED_LOW:
+				return new FixedRate(0.05);
+			default:
+				return new FixedRate(0.20);
+		}
+	}
+	
+	/*** Truth table of an operandBits x operandBits multiplier (or adder), most significant bits first like the examples */
+	private static Object[][][] multiplierOrAdderTruthTable(int operandBits, boolean add) {
+		int numInputs = operandBits * 2;
+		int cases = 1 << numInputs;
+		Object[][] inputs = new Object[cases][numInputs];
+		Object[][] outputs = new Object[cases][numInputs];
+		for(int t = 0; t < cases; t++) {
+			int a = t >>> operandBits;
+			int b = t & ((1 << operandBits) - 1);
+			int result = add ? a + b : a * b;
+			for(int bit = 0; bit < numInputs; bit++) {
+				inputs[t][bit] = ((t >>> (numInputs - 1 - bit)) & 1) == 1;
+				outputs[t][bit] = ((result >>> (numInputs - 1 - bit)) & 1) == 1;
+			}
+		}
+		return new Object[][][] {inputs, outputs};
+	}
+	
+	private static Object[][][] parityTruthTable(int numInputs) {
+		int cases = 1 << numInputs;
+		Object[][] inputs = new Object[cases][numInputs];
+		Object[][] outputs = new Object[cases][numInputs];
+		for(int t = 0; t < cases; t++) {
+			for(int bit = 0; bit < numInputs; bit++) {
+				inputs[t][bit] = ((t >>> bit) & 1) == 1;
+				outputs[t][bit] = false;
+			}
+			outputs[t][0] = Integer.bitCount(t) % 2 == 1;
+		}
+		return new Object[][][] {inputs, outputs};
+	}
+	
+	/*** The usual AND/OR/XOR/NAND/NOR gate set for generated problems */
+	static class GateSet extends CGP {
+		
+		GateSet(int rows, int cols, int levelsBack) {
+			super(rows, cols, levelsBack);
+		}
+		
+		public void initFunctions() {
+			addFunction(new BooleanFunction("AND") {
+				public long evaluateBits(long a, long b) {
+					return a & b;
+				}
+			});
+			addFunction(new BooleanFunction("OR") {
+				public long evaluateBits(long a, long b) {
+					return a | b;
+				}
+			});
+			addFunction(new BooleanFunction("XOR") {
+				public long evaluateBits(long a, long b) {
+					return a ^ b;
+				}
+			});
+			addFunction(new BooleanFunction("NAND") {
+				public long evaluateBits(long a, long b) {
+					return ~(a & b);
+				}
+			});
+			addFunction(new BooleanFunction("NOR") {
+				public long evaluateBits(long a, long b) {
+					return ~(a | b);
+				}
+			});
+		}
+	}
+	
+	private Problems() {
+	}
+}
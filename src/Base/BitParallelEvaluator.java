@@ -0,0 +1,266 @@
+package Base;
+
+/*** Evaluates Boolean circuits 64 test cases at a time.
+ * The input and expected output columns of the test cases are packed into long[] bitsets (one bit
+ * per test case), every active node is evaluated once per word with plain bitwise ops and the
+ * outputs are scored by XOR + popcount against the packed expected outputs.
+ * 
+ * Requires every function of the CGP to be a BooleanFunction and every test case value to be a Boolean.
+ * Node values are not updated by this evaluator.
+ * 
+ * Test cases set as a Boolean TestCaseSource are already bit-packed and are streamed through in blocks of
+ * BLOCK_WORDS words (64KB of test cases per column) instead of being packed onto the heap.
+ * 
+ * With a compilation threshold set, test sets at least that big are evaluated by compiling each individual into
+ * straight-line bytecode first (see CircuitCompiler). For circuits of up to a few hundred active nodes the generated
+ * code runs several times faster than this loop once the JIT has compiled it, which takes a few hundred thousand
+ * words of test cases, so it only pays back on very big test sets (millions of test cases) or individuals that get
+ * evaluated repeatedly. Bigger circuits are too big for the JIT and are evaluated by this loop.
+ * Fitness is exactly the same as with the interpreted loop. */
+public class BitParallelEvaluator extends FitnessEvaluator {
+	
+	// Packed test cases, shared with subclasses in this package
+	int numInputs = 0;
+	int numRows = 0;
+	int numOutputs = 0; // rows past the outputs of a TestCaseSource are ignored
+	int numWords = 0;
+	long[][] inputBits = null; // [input row][word], null when streaming from a TestCaseSource
+	long[][] outputBits = null; // [output row][word], null when streaming from a TestCaseSource
+	TestCaseSource source = null;
+	private long lastWordMask = 0; // valid test case bits of the last word
+	private boolean[] outputsToIgnore = null;
+	BooleanFunction[] functions = null; // the CGP's function set, indexed like the function genes
+	int totalTestCases = 0;
+	private int compilationThreshold = 0; // compile individuals when there are at least this many test cases, 0 = never
+	
+	static final int BLOCK_WORDS = 1024; // words evaluated per call to a compiled circuit or read from a TestCaseSource at once
+	
+	public void prepare(CGP cgp) {
+		functions = new BooleanFunction[cgp.numberOfFunctions()];
+		for(int i = 0; i < functions.length; i++) {
+			Function<?> f = cgp.getFunction(i);
+			if(!(f instanceof BooleanFunction)) {
+				throw new IllegalStateException("Function " + f.getName() + " is not a BooleanFunction");
+			}
+			functions[i] = (BooleanFunction)f;
+		}
+		
+		this.numRows = cgp.numberOfRows();
+		this.outputsToIgnore = cgp.getOutputsToIgnore();
+		
+		this.source = cgp.getTestCaseSource();
+		if(source != null) {
+			if(source.getValueType() != Function.ValueType.BOOLEAN) {
+				throw new IllegalStateException("Test case source holds " + source.getValueType() + " values instead of Booleans");
+			}
+			setTestCaseCount(source.getNumTestCases());
+			this.numInputs = source.getNumInputs();
+			this.numOutputs = source.getNumOutputs();
+			this.inputBits = null; // streamed from the source a block at a time
+			this.outputBits = null;
+			return;
+		}
+		
+		Object[][] testCaseInputs = cgp.getTestCaseInputs();
+		Object[][] testCaseOutputs = cgp.getTestCaseOutputs();
+		if(testCaseInputs == null) return; // test cases not set yet, we'll be called again when they are
+		
+		setTestCaseCount(testCaseInputs.length);
+		this.numInputs = totalTestCases > 0 ? testCaseInputs[0].length : 0;
+		this.numOutputs = numRows;
+		
+		this.inputBits = pack(testCaseInputs, numInputs, numWords);
+		this.outputBits = pack(testCaseOutputs, numRows, numWords);
+	}
+	
+	private void setTestCaseCount(int totalTestCases) {
+		this.totalTestCases = totalTestCases;
+		this.numWords = (totalTestCases + 63) / 64;
+		this.lastWordMask = totalTestCases % 64 == 0 ? -1L : (1L << (totalTestCases % 64)) - 1;
+	}
+	
+	private static long[][] pack(Object[][] testCases, int width, int numWords) {
+		long[][] packed = new long[width][numWords];
+		for(int tIndex = 0; tIndex < testCases.length; tIndex++) {
+			for(int row = 0; row < width; row++) {
+				Object value = testCases[tIndex][row];
+				if(!(value instanceof Boolean)) {
+					throw new IllegalArgumentException("Test case " + tIndex + " has a non Boolean value in row " + row + ": " + value);
+				}
+				if((Boolean)value) {
+					packed[row][tIndex >>> 6] |= 1L << (tIndex & 63);
+				}
+			}
+		}
+		return packed;
+	}
+	
+	/*** Compiles individuals to bytecode before evaluating them once there are at least minTestCases test cases.
+	 * 0 turns compilation off */
+	public void setCompilationThreshold(int minTestCases) {
+		this.compilationThreshold = minTestCases;
+	}
+	
+	public int getCompilationThreshold() {return this.compilationThreshold;}
+	
+	public int evaluate(Individual individual) {
+		return evaluate(individual, 0);
+	}
+	
+	public int evaluate(Individual individual, int threshold) {
+		if(compilationThreshold > 0 && totalTestCases >= compilationThreshold) {
+			CompiledCircuit circuit = individual.compiledCircuit;
+			if(circuit == null) {
+				circuit = CircuitCompiler.compile(individual, functions, numInputs);
+				individual.compiledCircuit = circuit; // reused until a mutation changes the phenotype
+			}
+			if(circuit != null) {
+				return evaluate(circuit, threshold);
+			}
+		}
+		
+		return evaluate(individual, threshold, null);
+	}
+	
+	/*** The interpreted loop. With a sample only the sampled words are evaluated and the sampled test cases the
+	 * individual passes are recorded in its sample pass bits. Individuals aren't compiled for samples */
+	public int evaluate(Individual individual, int threshold, TestCaseSample sample) {
+		int[] genes = individual.genes;
+		int[] schedule = individual.activeSchedule();
+		int numCols = genes.length / (Individual.GENES_PER_NODE * numRows);
+		
+		long[] values = new long[numCols * numRows]; // value of every node for the current word
+		int outputBase = (numCols - 1) * numRows;
+		long[][] inputs = inputBits;
+		long[][] expected = outputBits;
+		if(source != null) {
+			inputs = new long[numInputs][BLOCK_WORDS];
+			expected = new long[numOutputs][BLOCK_WORDS];
+		}
+		
+		int[] sampledWords = sample != null ? sample.getWords() : null;
+		int wordsToEvaluate = sample != null ? sampledWords.length : numWords;
+		int testCasesToEvaluate = sample != null ? sample.getNumTestCases() : totalTestCases;
+		long[] passBits = sample != null ? new long[wordsToEvaluate] : null;
+		individual.samplePassBits = passBits;
+		int passed = 0;
+		
+		// Runs of consecutive words are evaluated (and streamed from a TestCaseSource) as blocks
+		for(int w = 0; w < wordsToEvaluate; ) {
+			int fromWord = sample != null ? sampledWords[w] : w;
+			int toWord = fromWord + 1;
+			while(toWord - fromWord < BLOCK_WORDS && w + toWord - fromWord < wordsToEvaluate
+					&& (sample == null || sampledWords[w + toWord - fromWord] == toWord)) {
+				toWord++;
+			}
+			int blockStart = source != null ? readBlock(inputs, expected, fromWord, toWord) : 0;
+			
+			for(int word = fromWord; word < toWord; word++, w++) {
+				for(int row = 0; row < numInputs; row++) {
+					values[row] = inputs[row][word - blockStart];
+				}
+				
+				for(int address : schedule) {
+					int geneIndex = address * Individual.GENES_PER_NODE;
+					values[address] = functions[genes[geneIndex + Individual.FUNCTION_GENE]].evaluateBits(
+							values[genes[geneIndex + Individual.INPUT0_GENE]], values[genes[geneIndex + Individual.INPUT1_GENE]]);
+				}
+				
+				long passedBits = passedBits(values, outputBase, expected, word - blockStart, word);
+				if(passBits != null) {
+					passBits[w] = passedBits;
+				}
+				passed += Long.bitCount(passedBits);
+				
+				// Stop once the remaining test cases can't make up for the ones already failed
+				if(passed + Math.max(0, testCasesToEvaluate - (w + 1) * 64) < threshold) {
+					return passed;
+				}
+			}
+		}
+		
+		return passed;
+	}
+	
+	public boolean supportsSamples() {
+		return true;
+	}
+	
+	/*** Copies the words [fromWord, toWord) of the source's input and non ignored output columns to the
+	 * start of the block arrays and returns fromWord, the word the blocks start at */
+	int readBlock(long[][] inputs, long[][] expected, int fromWord, int toWord) {
+		for(int row = 0; row < numInputs; row++) {
+			source.readBits(source.inputColumn(row), fromWord, inputs[row], toWord - fromWord);
+		}
+		for(int row = 0; row < numOutputs; row++) {
+			if(!outputsToIgnore[row]) {
+				source.readBits(source.outputColumn(row), fromWord, expected[row], toWord - fromWord);
+			}
+		}
+		return fromWord;
+	}
+	
+	/*** Same as the interpreted loop, but with the active graph compiled to a straight-line method.
+	 * The words are processed in blocks so a bounded evaluation can still stop early */
+	public int evaluate(CompiledCircuit circuit, int threshold) {
+		long[][] inputs = inputBits;
+		long[][] expected = outputBits;
+		long[][] outputColumns;
+		if(source != null) {
+			inputs = new long[numInputs][BLOCK_WORDS];
+			expected = new long[numOutputs][BLOCK_WORDS];
+			outputColumns = new long[numRows][BLOCK_WORDS];
+		}
+		else {
+			outputColumns = new long[numRows][numWords];
+		}
+		long[] outputs = new long[numRows];
+		int passed = 0;
+		
+		for(int fromWord = 0; fromWord < numWords; fromWord += BLOCK_WORDS) {
+			int toWord = Math.min(numWords, fromWord + BLOCK_WORDS);
+			int blockStart = source != null ? readBlock(inputs, expected, fromWord, toWord) : 0;
+			circuit.evaluate(inputs, outputColumns, fromWord - blockStart, toWord - blockStart);
+			
+			for(int word = fromWord; word < toWord; word++) {
+				for(int row = 0; row < numRows; row++) {
+					outputs[row] = outputColumns[row][word - blockStart];
+				}
+				passed += countPassed(outputs, 0, expected, word - blockStart, word);
+			}
+			
+			if(passed + remainingTestCases(toWord) < threshold) {
+				break;
+			}
+		}
+		
+		return passed;
+	}
+	
+	/*** Number of test cases from the given word onwards */
+	int remainingTestCases(int fromWord) {
+		return Math.max(0, totalTestCases - fromWord * 64);
+	}
+	
+	/*** Returns the number of test cases of the word whose outputs (starting at outputOffset) match the expected ones */
+	int countPassed(long[] values, int outputOffset, int word) {
+		return countPassed(values, outputOffset, outputBits, word, word);
+	}
+	
+	int countPassed(long[] values, int outputOffset, long[][] expected, int index, int word) {
+		return Long.bitCount(passedBits(values, outputOffset, expected, index, word));
+	}
+	
+	/*** Returns the bits of the word's test cases that pass, with the expected outputs of the word at index of the expected columns */
+	long passedBits(long[] values, int outputOffset, long[][] expected, int index, int word) {
+		// A test case passes when none of its (non ignored) outputs differ from the expected ones
+		long mismatches = 0;
+		for(int row = 0; row < numOutputs; row++) {
+			if(!outputsToIgnore[row]) {
+				mismatches |= values[outputOffset + row] ^ expected[row][index];
+			}
+		}
+		long validBits = word == numWords - 1 ? lastWordMask : -1L;
+		return ~mismatches & validBits;
+	}
+}
@@ -0,0 +1,27 @@
+package Base;
+
+/*** A Boolean gate that can also be applied to 64 test cases at once.
+ * Each bit of the operands holds the value of one test case, so the gate has to be written with
+ * plain bitwise operators (e.g. a ^ b, ~(a & b)) */
+public abstract class BooleanFunction extends Function<Boolean> {
+
+	public BooleanFunction(String name) {
+		super(name);
+	}
+	
+	/*** Applies this gate bitwise to two packed words of test case values */
+	public abstract long evaluateBits(long a, long b);
+	
+	/*** Applies this gate to a single pair of values */
+	public boolean evaluateBoolean(boolean a, boolean b) {
+		return (evaluateBits(a ? -1L : 0L, b ? -1L : 0L) & 1L) != 0;
+	}
+	
+	public Boolean execute(Node a, Node b) {
+		return evaluateBoolean((Boolean)a.value(), (Boolean)b.value());
+	}
+	
+	public ValueType getValueType() {
+		return ValueType.BOOLEAN;
+	}
+}
@@ -1,8 +1,25 @@
 package Base;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 public class CGP {
+	
+	public static enum MutationOperator {
+		PER_GENE, // Individual.mutate(): a coin flip per gene
+		GEOMETRIC, // Individual.mutateGeometric(): same distribution, only draws the positions of the mutated genes
+		SINGLE_ACTIVE // Individual.mutateSingleActive(): exactly one active gene per offspring
+	}
 
 	private int levelsBack = 0;
 	private int numRows = 0;
@@ -14,16 +31,41 @@ public class CGP {
 	private Object[][] testCaseOutputs = null;
 	private boolean[] ignoredOutputs = null; // outputs that will be ignored during the fitness calculations
 	private int totalTestCases = 0;
+	private PrimitiveTestCases primitiveTestCases = null; // unboxed test cases when the function set is primitive-specialized
+	private TestCaseSource testCaseSource = null; // column oriented test cases, used instead of the Object[][] ones when set
 	
-	private static final int DEFAULT_GENERATION_SIZE = 100;
+	private MutationOperator mutationOperator = MutationOperator.PER_GENE;
+	private RandomGenerator.SplittableGenerator randomGenerator = null; // seeded runs draw every random number from it, see setSeed()
 	
-	private Vector<Generation> history = new Vector<Generation>(); 
+	private FitnessEvaluator fitnessEvaluator = null; // when null individuals use the default interpreted evaluation
+	private ExecutorService evaluationExecutor = null; // when set offspring are evaluated in parallel
+	private boolean ownsEvaluationExecutor = false; // created by setParallelEvaluation(), so shut down when replaced
+	private DistributedEvaluator distributedEvaluator = null; // when set offspring are evaluated by worker processes
+	private FitnessCache fitnessCache = null; // when set phenotypes that were already evaluated aren't evaluated again
+	private SamplingStrategy samplingStrategy = null; // when set each generation is only evaluated on a sample of the test cases
+	private TestCaseSample testCaseSample = null; // the current generation's sample
+	private int sampledGenerations = 0;
+	private MutationRateController mutationRateController = new FixedRate(0.20);
+	private int minimisationGenerations = 0; // see setSizeMinimisation(), 0 and 0 = no minimisation
+	private long minimisationMillis = 0;
+	
+	private List<EvolutionListener> listeners = new CopyOnWriteArrayList<EvolutionListener>();
+	private ConsoleEvolutionLogger consoleLogger = new ConsoleEvolutionLogger(1000);
+	private GenerationStats generationStats = null; // the generation being reported to the listeners, null outside of one
+	private GenerationEvent generationEvent = null;
+	private long generationStartNanos = 0;
+	private int generationNumber = 0;
+	private MutationRateController generationRates = null; // controller of the generation being reported, null for the initial one
+	
+	private static final int DEFAULT_GENERATION_SIZE = 100;
 	
 	public CGP(int rows, int cols, int levelsBack) {
 		init(rows, cols, levelsBack, DEFAULT_GENERATION_SIZE);
+		listeners.add(consoleLogger);
 	}
 	
 	public void init(int numRows, int numCols, int levelsBack, int sizeOfEachGeneration) {
+		functions.clear(); // init may be called again to resize the grid
 		initFunctions();
 		
 		this.numRows = numRows;
@@ -42,81 +84,757 @@ public class CGP {
 	}
 	
 	public Function selectRandomFunction() {
-		return functions.get((int)(Math.random()*functions.size()));
+		return selectRandomFunction(random());
+	}
+	
+	public Function selectRandomFunction(RandomGenerator random) {
+		return functions.get(selectRandomFunctionIndex(random));
+	}
+	
+	public int selectRandomFunctionIndex() {
+		return selectRandomFunctionIndex(random());
+	}
+	
+	public int selectRandomFunctionIndex(RandomGenerator random) {
+		return random.nextInt(functions.size());
 	}
 	
+	/*** 
+	 * Makes runs reproducible: every random number of the evolution is drawn from a SplittableRandom with this seed.
+	 * Offspring evaluated in parallel each get a generator split off in breeding order, so a seeded run gives the
+	 * same result whatever the number of threads
+	 * */
+	public void setSeed(long seed) {
+		setRandomGenerator(new SplittableRandom(seed));
+	}
+	
+	/*** 
+	 * Plugs in the generator runs draw their random numbers from, any splittable generator will do
+	 * (e.g. RandomGenerator.SplittableGenerator.of("L64X128MixRandom")). Pass null to go back to unseeded runs
+	 * on each thread's ThreadLocalRandom
+	 * */
+	public void setRandomGenerator(RandomGenerator.SplittableGenerator randomGenerator) {
+		this.randomGenerator = randomGenerator;
+	}
+	
+	/*** 
+	 * The generator of the evolving thread: the seeded generator or, if the run isn't seeded, the calling thread's
+	 * ThreadLocalRandom. A seeded generator isn't thread safe, work handed to other threads gets its own generator
+	 * from splitRandom()
+	 * */
+	public RandomGenerator random() {
+		return randomGenerator != null ? randomGenerator : ThreadLocalRandom.current();
+	}
+	
+	/*** A generator for work that runs on another thread, split off in the calling thread so that seeded runs don't
+	 * depend on thread scheduling. Null if the run isn't seeded, see threadRandom() */
+	RandomGenerator splitRandom() {
+		return randomGenerator != null ? randomGenerator.split() : null;
+	}
+	
+	/*** The generator a worker thread should use: the one split off for it, or its own ThreadLocalRandom */
+	static RandomGenerator threadRandom(RandomGenerator splitRandom) {
+		return splitRandom != null ? splitRandom : ThreadLocalRandom.current();
+	}
+	
+	public Function getFunction(int index) {return functions.get(index);}
+	
+	public int numberOfFunctions() {return functions.size();}
+	
+	/*** Returns the primitive value type shared by every function, or OBJECT if they don't all share one */
+	public Function.ValueType getFunctionValueType() {
+		Function.ValueType valueType = null;
+		for(Function f : functions) {
+			if(valueType != null && valueType != f.getValueType()) {
+				return Function.ValueType.OBJECT;
+			}
+			valueType = f.getValueType();
+		}
+		return valueType == null ? Function.ValueType.OBJECT : valueType;
+	}
+	
+	public Vector<Function> getFunctions() {return this.functions;}
+	
 	/*** 
 	 * Sets the test cases that will be used by the fitness test
 	 * */
 	public void setFitnessTestCases(Object[][] testCaseInputs, Object[][] testCaseOutputs) {
 		this.testCaseInputs = testCaseInputs;
 		this.testCaseOutputs = testCaseOutputs;
+		this.testCaseSource = null;
 		this.totalTestCases = testCaseInputs.length;
+		this.primitiveTestCases = PrimitiveTestCases.of(getFunctionValueType(), testCaseInputs, testCaseOutputs);
+		
+		testCasesChanged();
 	}
 	
-	public void testEvolve() {
+	/*** 
+	 * Sets test cases that are read column by column from the source, e.g. a memory-mapped ColumnarTestCaseFile,
+	 * instead of being held on the heap as Object[][]. Individuals stream through the columns in blocks.
+	 * Rows past the source's outputs are ignored like the outputs passed to setOutputsToIgnore()
+	 * */
+	public void setFitnessTestCases(TestCaseSource testCaseSource) {
+		if(testCaseSource.getNumInputs() > numRows || testCaseSource.getNumOutputs() > numRows) {
+			throw new IllegalArgumentException("A grid with " + numRows + " rows can't hold " + testCaseSource);
+		}
+		this.testCaseInputs = null;
+		this.testCaseOutputs = null;
+		this.testCaseSource = testCaseSource;
+		this.totalTestCases = testCaseSource.getNumTestCases();
+		this.primitiveTestCases = null;
 		
-		System.out.println("Randomly generating initial start individuals");
+		testCasesChanged();
+	}
+	
+	private void testCasesChanged() {
+		if(fitnessEvaluator != null) {
+			fitnessEvaluator.prepare(this);
+		}
+		if(fitnessCache != null) {
+			fitnessCache.clear();
+		}
+		if(samplingStrategy != null) {
+			samplingStrategy.prepare(this);
+		}
+		this.testCaseSample = null;
+	}
+	
+	/*** 
+	 * Evaluates each generation on a sample of the test cases picked by the strategy, e.g. MiniBatchSampling,
+	 * LexicaseSampling or ProgressiveSampling. Pass null to evaluate on every test case again.
+	 * The fitness evaluator, if any, has to support samples (see FitnessEvaluator.supportsSamples())
+	 * */
+	public void setSamplingStrategy(SamplingStrategy samplingStrategy) {
+		checkSampling(samplingStrategy, fitnessEvaluator);
+		this.samplingStrategy = samplingStrategy;
+		this.testCaseSample = null;
+		this.sampledGenerations = 0;
+		if(samplingStrategy != null) {
+			samplingStrategy.prepare(this);
+		}
+	}
+	
+	public SamplingStrategy getSamplingStrategy() {return this.samplingStrategy;}
+	
+	private static void checkSampling(SamplingStrategy samplingStrategy, FitnessEvaluator fitnessEvaluator) {
+		if(samplingStrategy != null && fitnessEvaluator != null && !fitnessEvaluator.supportsSamples()) {
+			throw new IllegalArgumentException(fitnessEvaluator.getClass().getName() + " can't evaluate test case samples, it can't be combined with a sampling strategy");
+		}
+	}
+	
+	/*** The sample of the test cases the current generation is evaluated on, or null if it's evaluated on all of them */
+	public TestCaseSample getTestCaseSample() {return this.testCaseSample;}
+	
+	/*** Asks the sampling strategy for the next generation's sample. parent is scored on the previous one */
+	private void nextTestCaseSample(Individual parent) {
+		this.testCaseSample = samplingStrategy.nextSample(sampledGenerations++, parent, random());
+	}
+	
+	/*** 
+	 * When sampling, an individual that passes every test case of the current sample gets re-scored on the full
+	 * test set. Returns that re-scored copy if it passes every test case, otherwise the individual itself
+	 * */
+	private Individual checkFullTestSet(Individual individual) {
+		if(testCaseSample == null || individual.getCachedFitness() < testCaseSample.getNumTestCases()) {
+			return individual;
+		}
+		Individual rescored = individual.clone();
+		rescored.calculateFitness(totalTestCases, null);
+		return rescored.getCachedFitness() >= totalTestCases ? rescored : individual;
+	}
+	
+	/*** 
+	 * Shares a phenotype keyed fitness cache between every individual of this CGP. Pass null to stop caching
+	 * */
+	public void setFitnessCache(FitnessCache fitnessCache) {
+		this.fitnessCache = fitnessCache;
+	}
+	
+	public FitnessCache getFitnessCache() {return this.fitnessCache;}
+	
+	/*** 
+	 * Sets the evaluator used to score individuals, e.g. a BitParallelEvaluator for Boolean problems.
+	 * Pass null to go back to the default interpreted evaluation
+	 * */
+	public void setFitnessEvaluator(FitnessEvaluator fitnessEvaluator) {
+		checkSampling(samplingStrategy, fitnessEvaluator);
+		this.fitnessEvaluator = fitnessEvaluator;
+		if(fitnessEvaluator != null) {
+			fitnessEvaluator.prepare(this);
+		}
+	}
+	
+	public FitnessEvaluator getFitnessEvaluator() {return this.fitnessEvaluator;}
+	
+	/*** 
+	 * Adds a listener that's told about every generation evolved by testEvolve(), randomFittestIndividual() and
+	 * evolveGeneration(), e.g. an EvolutionMetrics
+	 * */
+	public void addEvolutionListener(EvolutionListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeEvolutionListener(EvolutionListener listener) {
+		listeners.remove(listener);
+	}
+	
+	/*** 
+	 * Turns the progress log printed to the console on or off, it's on by default.
+	 * The log is rate limited, see getConsoleLogger().setInterval()
+	 * */
+	public void setConsoleLogging(boolean consoleLogging) {
+		listeners.remove(consoleLogger);
+		if(consoleLogging) {
+			listeners.add(consoleLogger);
+		}
+	}
+	
+	public ConsoleEvolutionLogger getConsoleLogger() {return this.consoleLogger;}
+	
+	/*** 
+	 * Makes testEvolve() go on minimising the size of the solution it found, see minimiseSize(), for at most
+	 * maxGenerations generations and maxMillis milliseconds. A limit of 0 means no limit, both 0 turns it off
+	 * */
+	public void setSizeMinimisation(int maxGenerations, long maxMillis) {
+		this.minimisationGenerations = maxGenerations;
+		this.minimisationMillis = maxMillis;
+	}
+	
+	public int getSizeMinimisationGenerations() {return this.minimisationGenerations;}
+	public long getSizeMinimisationMillis() {return this.minimisationMillis;}
+	
+	/*** Evolves until an individual passes every test case and returns it.
+	 * With size minimisation on (see setSizeMinimisation()) the solution is then shrunk before it's returned */
+	public Individual testEvolve() {
+		EvolutionRunEvent runEvent = new EvolutionRunEvent();
+		runEvent.begin();
+		for(EvolutionListener listener : listeners) {
+			listener.runStarted(this);
+		}
+		
+		mutationRateController.prepare(this);
+		Individual fittest = checkFullTestSet(randomFittestIndividual());
+		
+		int generationCounter = 1;		
+		int desiredFitness = totalTestCases;
+		
+		while(fittest.getCachedFitness() < desiredFitness) {
+			fittest = checkFullTestSet(evolveGeneration(fittest, mutationRateController));
+			
+//			try {
+//				Thread.sleep(250);
+//			} catch(InterruptedException ie) {}
+			
+			generationCounter++;
+		}
+		
+		if(minimisationGenerations > 0 || minimisationMillis > 0) {
+			fittest = minimiseSize(fittest, mutationRateController, minimisationGenerations, minimisationMillis);
+		}
+		
+		for(EvolutionListener listener : listeners) {
+			listener.runCompleted(fittest, generationCounter);
+		}
+		runEvent.generations = generationCounter;
+		runEvent.fitness = fittest.getCachedFitness();
+		runEvent.testCases = totalTestCases;
+		runEvent.activeNodes = fittest.numberOfActiveNodes();
+		runEvent.commit();
+		
+		return fittest;
+	}
+	
+	/*** 
+	 * Second phase for a solution (an individual passing every test case): keeps evolving it under a lexicographic
+	 * objective, every test case passed first and fewest active nodes second, and returns the smallest solution found.
+	 * Offspring that pass every test case and are no bigger than their parent replace it, so the search can drift
+	 * across equally sized solutions. Offspring are evaluated on the full test set, bounded by it, so wrong ones are
+	 * rejected early. Stops after maxGenerations generations or maxMillis milliseconds, whichever comes first
+	 * (0 means no limit, but at least one limit must be given)
+	 * */
+	public Individual minimiseSize(Individual solution, double mutationRate, int maxGenerations, long maxMillis) {
+		return minimiseSize(solution, new FixedRate(mutationRate), maxGenerations, maxMillis);
+	}
+	
+	/*** minimiseSize() with the offspring's rates chosen by rates, which gets the feedback of each generation */
+	public Individual minimiseSize(Individual solution, MutationRateController rates, int maxGenerations, long maxMillis) {
+		if(maxGenerations <= 0 && maxMillis <= 0) {
+			throw new IllegalArgumentException("Size minimisation needs a generation or time limit");
+		}
+		if(solution.getCachedFitness() < totalTestCases || solution.getSamplePassBits() != null) {
+			throw new IllegalArgumentException("Only individuals that pass every test case of the full test set can be minimised");
+		}
+		testCaseSample = null; // correctness is always checked on the full test set
+		
+		long deadline = System.nanoTime() + maxMillis * 1000000;
+		Individual smallest = solution;
+		for(int generation = 0; (maxGenerations <= 0 || generation < maxGenerations)
+				&& (maxMillis <= 0 || System.nanoTime() - deadline < 0); generation++) {
+			beginGeneration(generationNumber + 1, rates);
+			smallest = completeGeneration(evolveSmallerGeneration(smallest, rates));
+		}
+		return smallest;
+	}
+	
+	/*** One generation of minimiseSize(), on the distributed evaluator or evaluation executor if one is set */
+	private Individual evolveSmallerGeneration(Individual parent, MutationRateController rates) {
+		RandomGenerator random = random();
+		List<Individual> generation = null;
+		if(distributedEvaluator != null) {
+			generation = breedDistributed(parent, rates, totalTestCases, random);
+		}
+		else if(evaluationExecutor != null) {
+			generation = breedInParallel(parent, rates, totalTestCases);
+		}
 		
+		Individual smallest = parent;
+		for(int i = 0; i < sizeOfEachGeneration; i++) {
+			// Like evolveGenerationSequentially() the sequential loop breeds from the current smallest
+			Individual offspring = generation != null ? generation.get(i) : breedOffspring(smallest, rates, totalTestCases, random);
+			
+			offspringEvaluated(offspring, generation != null ? parent : smallest, 1);
+			
+			if(offspring.getCachedFitness() >= totalTestCases && offspring.numberOfActiveNodes() <= smallest.numberOfActiveNodes()) {
+				smallest = offspring;
+			}
+		}
+		return smallest;
+	}
+	
+	/*** Randomly generates a generation of individuals, evaluates them and returns the fittest */
+	public Individual randomFittestIndividual() {
+		beginGeneration(0, null);
+		return completeGeneration(randomFittestIndividual(random()));
+	}
+	
+	Individual randomFittestIndividual(RandomGenerator random) {
 		Individual fittest = null;
+		if(samplingStrategy != null) {
+			nextTestCaseSample(null);
+		}
 		
+		List<Individual> generation = new ArrayList<Individual>(this.sizeOfEachGeneration);
 		for(int i = 0; i < this.sizeOfEachGeneration; i++) {
 			Individual individual = newIndividual();
 			individual.setCGPSettings(this);
-			individual.initWithCGPSettings();
-			
-			// evaluate the individual's performance
-			individual.calculateFitness();
-			
-			postFitnessCalculation(individual, 0);
+			individual.initWithCGPSettings(random);
+			generation.add(individual);
+		}
+		
+		// evaluate the individuals' performance
+		if(distributedEvaluator != null && samplingStrategy == null) {
+			distributedEvaluator.evaluate(this, generation, 0);
+		}
+		else {
+			for(Individual individual : generation) {
+				individual.calculateFitness();
+			}
+		}
+		
+		for(Individual individual : generation) {
+			offspringEvaluated(individual, null, 0);
 			
-			if(fittest == null || individual.getCachedFitness() > fittest.getCachedFitness()) {
+			if(fittest == null || individual.isFitterThan(fittest)) {
 				fittest = individual;
 			}
 		}
+		return fittest;
+	}
+	
+	/*** Breeds one generation of offspring from parent and returns the fittest, which becomes the next parent.
+	 * Uses the distributed evaluator or evaluation executor when one is set. When sampling, the generation gets a new
+	 * sample and the parent is re-scored on it first */
+	public Individual evolveGeneration(Individual parent, double mutationRate) {
+		return evolveGeneration(parent, new FixedRate(mutationRate));
+	}
+	
+	/*** evolveGeneration() with the CGP's mutation rate controller, see setMutationRateController() */
+	public Individual evolveGeneration(Individual parent) {
+		return evolveGeneration(parent, mutationRateController);
+	}
+	
+	/*** evolveGeneration() with the offspring's rates chosen by rates, which gets the feedback of the generation */
+	public Individual evolveGeneration(Individual parent, MutationRateController rates) {
+		beginGeneration(generationNumber + 1, rates);
+		return completeGeneration(evolveGeneration(parent, rates, random()));
+	}
+	
+	private Individual evolveGeneration(Individual parent, MutationRateController rates, RandomGenerator random) {
+		if(distributedEvaluator != null) {
+			if(samplingStrategy != null) {
+				throw new IllegalStateException("Distributed evaluation is always on the full test set, it can't be combined with a sampling strategy");
+			}
+			return fittestOf(parent, breedDistributed(parent, rates, parent.getCachedFitness(), random));
+		}
+		if(samplingStrategy != null) {
+			nextTestCaseSample(parent);
+			parent.calculateFitness();
+			if(samplingStrategy.isLexicase()) {
+				return evolveLexicaseGeneration(parent, rates, random);
+			}
+		}
+		if(evaluationExecutor != null) {
+			return evolveGenerationInParallel(parent, rates);
+		}
+		return evolveGenerationSequentially(parent, rates, random);
+	}
+	
+	/*** Starts reporting a generation, bred with rates, to the listeners, JFR and rates */
+	private void beginGeneration(int generation, MutationRateController rates) {
+		this.generationNumber = generation;
+		this.generationRates = rates;
+		this.generationStats = new GenerationStats(generation);
+		this.generationEvent = new GenerationEvent();
+		this.generationStartNanos = System.nanoTime();
+		generationEvent.begin();
+	}
+	
+	/*** Completes the generation begun by beginGeneration() with the parent it produced and returns that parent */
+	private Individual completeGeneration(Individual parent) {
+		GenerationStats stats = generationStats;
+		GenerationEvent event = generationEvent;
+		MutationRateController rates = generationRates;
+		generationStats = null;
+		generationEvent = null;
+		generationRates = null;
 		
-		int generationCounter = 1;		
-		int desiredFitness = totalTestCases;
-		double mutationRate = 0.20; // start with this for now
+		event.end();
+		stats.complete(parent, testCaseSample != null ? testCaseSample.getNumTestCases() : totalTestCases, System.nanoTime() - generationStartNanos);
+		if(event.shouldCommit()) {
+			event.generation = stats.getGeneration();
+			event.fitness = stats.getFitness();
+			event.testCases = stats.getTestCases();
+			event.error = stats.getError();
+			event.activeNodes = stats.getActiveNodes();
+			event.mutationRate = stats.getMutationRate();
+			event.offspring = stats.getOffspring();
+			event.evaluations = stats.getEvaluations();
+			event.improving = stats.getImproving();
+			event.neutral = stats.getNeutral();
+			event.worsening = stats.getWorsening();
+			event.commit();
+		}
+		if(rates != null) {
+			rates.generationCompleted(stats);
+		}
+		for(EvolutionListener listener : listeners) {
+			listener.generationCompleted(stats);
+		}
+		return parent;
+	}
+	
+	/*** Reports an evaluated offspring of parent (null for initial individuals), on the evolving thread */
+	@SuppressWarnings("deprecation")
+	private void offspringEvaluated(Individual offspring, Individual parent, int step) {
+		// Only generations begun by the public methods are reported, islands evolve through the package private ones
+		// on several threads at once
+		if(generationStats != null) {
+			postFitnessCalculation(offspring, step);
+			generationStats.record(offspring, parent);
+			if(generationRates != null && parent != null) {
+				generationRates.offspringEvaluated(offspring, parent);
+			}
+			for(EvolutionListener listener : listeners) {
+				listener.offspringEvaluated(offspring, parent);
+			}
+		}
+	}
+	
+	/*** Breeds and evaluates one generation on the calling thread */
+	private Individual evolveGenerationSequentially(Individual parent, MutationRateController rates, RandomGenerator random) {
+		Individual fittest = parent;
+		for(int i = 0; i < this.sizeOfEachGeneration; i++) {
+			Individual offspring = breedOffspring(fittest, rates, fittest.getCachedFitness(), random); // fittest is current parent
+			
+			offspringEvaluated(offspring, fittest, 1);
+			
+			if(offspring.isAtLeastAsFitAs(fittest)) {
+				fittest = offspring;
+			}
+			// else leave fittest alone....
+		}
+		return fittest;
+	}
+	
+	/*** Breeds and evaluates one generation of an IslandModel island on the calling thread. Only rates, the island's
+	 * own controller, gets the generation's feedback, the listeners and JFR only hear about the evolving thread */
+	Individual evolveIslandGeneration(Individual parent, int generation, MutationRateController rates, RandomGenerator random) {
+		long startNanos = System.nanoTime();
+		GenerationStats stats = new GenerationStats(generation);
+		Individual fittest = parent;
+		for(int i = 0; i < this.sizeOfEachGeneration; i++) {
+			Individual offspring = breedOffspring(fittest, rates, fittest.getCachedFitness(), random);
+			
+			stats.record(offspring, fittest);
+			rates.offspringEvaluated(offspring, fittest);
+			
+			if(offspring.isAtLeastAsFitAs(fittest)) {
+				fittest = offspring;
+			}
+		}
+		stats.complete(fittest, totalTestCases, System.nanoTime() - startNanos);
+		rates.generationCompleted(stats);
+		return fittest;
+	}
+	
+	/*** Clones, mutates and evaluates one offspring of parent, bounded by threshold. Safe to call from several threads with the same parent */
+	private Individual breedOffspring(Individual parent, MutationRateController rates, int threshold, RandomGenerator random) {
+		Individual offspring = mutatedClone(parent, rates, random);
 		
-		while(fittest.getCachedFitness() < desiredFitness) {
-			System.out.println();
-			System.out.println("Fittest individual was: " + fittest);
-			System.out.println("Fitness level: " + fittest.getCachedFitness());
+		// Offspring whose mutations only hit inactive genes keep their parent's fitness. The others only have to
+		// be evaluated as far as needed to tell if they can still match the parent, which they must to be kept
+		if(offspring.activeGenesChanged()) {
+			offspring.calculateFitness(threshold);
+		}
+		return offspring;
+	}
+	
+	/*** Clones parent and mutates the clone with the mutation operator, at the rate rates chooses for it */
+	private Individual mutatedClone(Individual parent, MutationRateController rates, RandomGenerator random) {
+		Individual offspring = parent.clone();
+		switch(mutationOperator) {
+			case SINGLE_ACTIVE:
+				offspring.mutateSingleActive(random);
+				break;
+			case GEOMETRIC:
+				offspring.mutationRate = rates.offspringRate(parent, random);
+				offspring.mutateGeometric(offspring.mutationRate, random);
+				break;
+			default:
+				offspring.mutationRate = rates.offspringRate(parent, random);
+				offspring.mutate(offspring.mutationRate, random);
+		}
+		return offspring;
+	}
+	
+	/*** 
+	 * Breeds and evaluates a whole generation of offspring of parent concurrently on the evaluation executor.
+	 * Unlike the sequential loop, every offspring of the generation comes from the same parent (a true 1+lambda).
+	 * The new parent is then picked in offspring order with the same "offspring >= parent wins" rule, so the
+	 * outcome doesn't depend on which thread finished first
+	 * */
+	private Individual evolveGenerationInParallel(Individual parent, MutationRateController rates) {
+		return fittestOf(parent, breedInParallel(parent, rates, parent.getCachedFitness()));
+	}
+	
+	/*** Reports a generation of offspring of parent and picks the next parent, in offspring order with the "offspring >= parent wins" rule */
+	private Individual fittestOf(Individual parent, List<Individual> generation) {
+		Individual fittest = parent;
+		for(Individual offspring : generation) {
 			
-			for(int i = 0; i < this.sizeOfEachGeneration; i++) {
-				Individual offspring = fittest.clone(); // fittest is current parent
-				offspring.mutate(mutationRate);
-				offspring.calculateFitness();
-				
-				postFitnessCalculation(offspring, 1);
-				
-				if(offspring.getCachedFitness() >= fittest.getCachedFitness()) {
-					fittest = offspring;
+			offspringEvaluated(offspring, parent, 1);
+			
+			if(offspring.isAtLeastAsFitAs(fittest)) {
+				fittest = offspring;
+			}
+		}
+		return fittest;
+	}
+	
+	/*** Breeds a generation of offspring of parent on the evaluation executor and returns them in breeding order */
+	private List<Individual> breedInParallel(final Individual parent, final MutationRateController rates, final int threshold) {
+		parent.activeSchedule(); // fill the parent's active set cache once instead of in every clone
+		
+		List<Callable<Individual>> tasks = new ArrayList<Callable<Individual>>(sizeOfEachGeneration);
+		for(int i = 0; i < sizeOfEachGeneration; i++) {
+			final RandomGenerator random = splitRandom();
+			tasks.add(new Callable<Individual>() {
+				public Individual call() {
+					return breedOffspring(parent, rates, threshold, threadRandom(random));
 				}
-				// else leave fittest alone....
+			});
+		}
+		
+		List<Future<Individual>> results;
+		try {
+			results = evaluationExecutor.invokeAll(tasks);
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while evaluating offspring", ie);
+		}
+		
+		List<Individual> offspring = new ArrayList<Individual>(results.size());
+		for(Future<Individual> result : results) {
+			offspring.add(getResult(result));
+		}
+		return offspring;
+	}
+	
+	/*** 
+	 * Breeds a generation of offspring of parent on this thread and has the distributed evaluator evaluate the ones
+	 * whose active genes changed, bounded by threshold. Returns them in breeding order
+	 * */
+	private List<Individual> breedDistributed(Individual parent, MutationRateController rates, int threshold, RandomGenerator random) {
+		parent.activeSchedule(); // fill the parent's active set cache once instead of in every clone
+		
+		List<Individual> offspring = new ArrayList<Individual>(sizeOfEachGeneration);
+		List<Individual> changed = new ArrayList<Individual>(sizeOfEachGeneration);
+		for(int i = 0; i < sizeOfEachGeneration; i++) {
+			Individual child = mutatedClone(parent, rates, random);
+			offspring.add(child);
+			if(child.activeGenesChanged()) {
+				changed.add(child);
 			}
+		}
+		distributedEvaluator.evaluate(this, changed, threshold);
+		return offspring;
+	}
+	
+	/*** 
+	 * Breeds a generation of offspring of parent and picks the next parent among the parent and the offspring that
+	 * pass at least as many sampled test cases, by lexicase selection: the sampled test cases are gone through in
+	 * random order, each time keeping only the candidates that pass it (when any do), until one candidate is left.
+	 * Remaining ties go to an offspring, like with the "offspring >= parent wins" rule.
+	 * Offspring that pass fewer test cases are left out because with a single lineage plain lexicase selection
+	 * keeps adopting specialists and drifts away from solutions
+	 * */
+	private Individual evolveLexicaseGeneration(Individual parent, MutationRateController rates, RandomGenerator random) {
+		List<Individual> generation;
+		if(evaluationExecutor != null) {
+			generation = breedInParallel(parent, rates, parent.getCachedFitness());
+		}
+		else {
+			generation = new ArrayList<Individual>(sizeOfEachGeneration);
+			for(int i = 0; i < sizeOfEachGeneration; i++) {
+				generation.add(breedOffspring(parent, rates, parent.getCachedFitness(), random));
+			}
+		}
+		
+		List<Individual> candidates = new ArrayList<Individual>(generation.size() + 1);
+		candidates.add(parent);
+		for(Individual offspring : generation) {
+			offspringEvaluated(offspring, parent, 1);
 			
-//			try {
-//				Thread.sleep(250);
-//			} catch(InterruptedException ie) {}
-			
-			generationCounter++;
+			if(offspring.isAtLeastAsFitAs(parent)) {
+				candidates.add(offspring);
+			}
 		}
 		
-		System.out.println("Took " + generationCounter + " generations.");
-		System.out.println("Fittest individual was: " + fittest);
-		System.out.println("Fitness level: " + fittest.getCachedFitness());
+		int numTestCases = testCaseSample.getNumTestCases();
+		int[] order = new int[numTestCases];
+		for(int i = 0; i < numTestCases; i++) {
+			order[i] = i;
+		}
 		
+		for(int i = 0; i < numTestCases && candidates.size() > 1; i++) {
+			// Pick the next test case with a lazy Fisher-Yates shuffle
+			int swap = i + random.nextInt(numTestCases - i);
+			int testCase = order[swap];
+			order[swap] = order[i];
+			
+			List<Individual> survivors = new ArrayList<Individual>(candidates.size());
+			for(Individual candidate : candidates) {
+				long[] passBits = candidate.getSamplePassBits();
+				if(passBits == null) {
+					throw new IllegalStateException("Lexicase selection needs an evaluator that records the sampled test cases passed");
+				}
+				if((passBits[testCase >>> 6] & (1L << (testCase & 63))) != 0) {
+					survivors.add(candidate);
+				}
+			}
+			if(!survivors.isEmpty()) {
+				candidates = survivors;
+			}
+		}
+		
+		if(candidates.size() > 1 && candidates.get(0) == parent) {
+			candidates.remove(0);
+		}
+		return candidates.get(random.nextInt(candidates.size()));
+	}
+	
+	private static Individual getResult(Future<Individual> result) {
+		try {
+			return result.get();
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while evaluating offspring", ie);
+		} catch(ExecutionException ee) {
+			if(ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)ee.getCause();
+			}
+			throw new IllegalStateException("Offspring evaluation failed", ee.getCause());
+		}
 	}
 	
+	/*** 
+	 * Evaluates each generation's offspring concurrently on the given executor, e.g. a ForkJoinPool or, on newer JDKs,
+	 * Executors.newVirtualThreadPerTaskExecutor(). The executor isn't shut down by the CGP.
+	 * Pass null to go back to sequential evolution. The fitness evaluator and functions must be thread safe
+	 * */
+	public void setEvaluationExecutor(ExecutorService evaluationExecutor) {
+		if(ownsEvaluationExecutor && this.evaluationExecutor != evaluationExecutor) {
+			this.evaluationExecutor.shutdown();
+		}
+		this.evaluationExecutor = evaluationExecutor;
+		this.ownsEvaluationExecutor = false;
+	}
+	
+	/*** 
+	 * Evaluates each generation's offspring on a ForkJoinPool with the given number of threads. The CGP shuts the pool
+	 * down when it's replaced, e.g. by another setParallelEvaluation() call or setEvaluationExecutor(null)
+	 * */
+	public void setParallelEvaluation(int numThreads) {
+		setEvaluationExecutor(new ForkJoinPool(numThreads));
+		this.ownsEvaluationExecutor = true;
+	}
+	
+	public ExecutorService getEvaluationExecutor() {return this.evaluationExecutor;}
+	
+	/*** 
+	 * Chooses the mutation rate of testEvolve()'s offspring, e.g. a OneFifthSuccessRule, SelfAdaptiveRate or
+	 * StagnationBurst. The default is a FixedRate of 0.20
+	 * */
+	public void setMutationRateController(MutationRateController mutationRateController) {
+		this.mutationRateController = mutationRateController;
+	}
+	
+	public MutationRateController getMutationRateController() {return this.mutationRateController;}
+	
+	/*** 
+	 * Evaluates each generation's offspring on the worker processes of the given evaluator, which takes precedence
+	 * over the evaluation executor. Offspring are still bred on the evolving thread, so seeded runs don't depend on
+	 * the workers. The evaluator isn't closed by the CGP. Pass null to evaluate in this JVM again
+	 * */
+	public void setDistributedEvaluator(DistributedEvaluator distributedEvaluator) {
+		this.distributedEvaluator = distributedEvaluator;
+	}
+	
+	public DistributedEvaluator getDistributedEvaluator() {return this.distributedEvaluator;}
+	
+	/*** How offspring are mutated, PER_GENE by default */
+	public void setMutationOperator(MutationOperator mutationOperator) {
+		this.mutationOperator = mutationOperator;
+	}
+	
+	public MutationOperator getMutationOperator() {return this.mutationOperator;}
+	
+	/*** 
+	 * When enabled every offspring gets exactly one active gene mutation (see Individual.mutateSingleActive())
+	 * instead of the per gene mutation rate
+	 * */
+	public void setSingleActiveMutation(boolean singleActiveMutation) {
+		setMutationOperator(singleActiveMutation ? MutationOperator.SINGLE_ACTIVE : MutationOperator.PER_GENE);
+	}
+	
+	public boolean isSingleActiveMutation() {return this.mutationOperator == MutationOperator.SINGLE_ACTIVE;}
+	
 	public int numberOfCols() {return this.numCols;}
 	public int numberOfRows() {return this.numRows;}
 	public int levelsBack() {return this.levelsBack;}
 	
+	public int getTotalTestCases() {return totalTestCases;}
+	public int getGenerationSize() {return sizeOfEachGeneration;}
+	
 	public Object[][] getTestCaseInputs() {return testCaseInputs;}
 	public Object[][] getTestCaseOutputs() {return testCaseOutputs;}
 	
+	/*** The column oriented test cases, or null if the test cases were set as Object[][] */
+	public TestCaseSource getTestCaseSource() {return testCaseSource;}
+	
+	/*** Unboxed test cases, or null if the function set isn't primitive-specialized or the test cases don't fit its type */
+	public PrimitiveTestCases getPrimitiveTestCases() {return primitiveTestCases;}
+	
 	/*** 
 	 * Outputs that will be ignored during the fitness calculations for all individuals
 	 * Useful for applications where we have many input rows but not all outputs are relevant,
@@ -125,16 +843,22 @@ public class CGP {
 		for(int outputIndex : ignoreIndexes) {
 			this.ignoredOutputs[outputIndex] = true;
 		}
+		testCasesChanged(); // what counts as a pass changed, so do cached fitness values and the evaluator's scored outputs
 	}
 	
 	public boolean[] getOutputsToIgnore() {return this.ignoredOutputs;}
 	
 	/*** Any processing that will be done after an individual's fitness is calculated
-	 * Used by visualizer animation, for instance
+	 * Used by visualizer animation, for instance. Called on the evolving thread, like the EvolutionListeners, so not
+	 * for the individuals of an IslandModel's islands
+	 * @deprecated register an EvolutionListener instead, see addEvolutionListener()
 	 *  */
+	@Deprecated
 	public void postFitnessCalculation(Individual individual, int step) {
 	}
 	
+	/*** @deprecated never called, node evaluation isn't observable */
+	@Deprecated
 	public void postNodeEval(Node node, int step) {
 		
 	}
@@ -146,11 +870,5 @@ public class CGP {
 		Individual individual = new Individual();
 		return individual;
 	}
-	
-	class Generation {		
-		private Vector<Individual> population = new Vector<Individual>();		
-		public Generation(int size) {			
-		}
-	}
 
 }
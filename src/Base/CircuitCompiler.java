@@ -0,0 +1,369 @@
+package Base;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*** Compiles the active graph of a Boolean individual into a hidden class with one straight-line loop.
+ * 
+ * For every word of the test cases the generated evaluate() loads the used input words into locals, calls
+ * evaluateBits() once per active node, keeping every node value in a local, and stores the output words.
+ * Since every node has its own call site, the JIT can inline each gate. The loop lives in the generated
+ * method so it gets compiled on stack replacement during a single long evaluation. Hidden classes are
+ * unloaded once the compiled circuit is no longer referenced. */
+public class CircuitCompiler {
+	
+	private static final String CIRCUIT_CLASS = "Base/CompiledCircuit";
+	private static final String GENERATED_CLASS = "Base/GeneratedCircuit"; // must be in the same package as the lookup
+	private static final String FUNCTION_CLASS = "Base/BooleanFunction";
+	
+	// HotSpot never JIT-compiles methods with more bytecode than this (-XX:-DontCompileHugeMethods), bigger circuits
+	// would stay interpreted and run far slower than BitParallelEvaluator's loop
+	private static final int MAX_CODE_LENGTH = 8000;
+	
+	// Locals of the generated evaluate(), followed by one local per used input column and one long per node value
+	private static final int INPUTS_LOCAL = 1;
+	private static final int OUTPUTS_LOCAL = 2;
+	private static final int WORD_LOCAL = 3; // the fromWord parameter doubles as the loop counter
+	private static final int TO_WORD_LOCAL = 4;
+	private static final int FUNCTIONS_LOCAL = 5;
+	private static final int FIRST_COLUMN_LOCAL = 6;
+	
+	// Opcodes used by the generated code
+	private static final int ICONST_0 = 0x03;
+	private static final int LCONST_0 = 0x09;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int ILOAD = 0x15;
+	private static final int LLOAD = 0x16;
+	private static final int ALOAD = 0x19;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int LALOAD = 0x2f;
+	private static final int AALOAD = 0x32;
+	private static final int LSTORE = 0x37;
+	private static final int ASTORE = 0x3a;
+	private static final int LASTORE = 0x50;
+	private static final int IINC = 0x84;
+	private static final int IF_ICMPGE = 0xa2;
+	private static final int GOTO = 0xa7;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int WIDE = 0xc4;
+	
+	// Stack map frame constants
+	private static final int FULL_FRAME = 255;
+	private static final int ITEM_INTEGER = 1;
+	private static final int ITEM_OBJECT = 7;
+	
+	/*** Compiles the individual's active graph. Returns null if the graph can't be compiled, e.g. its code would be too
+	 * big for the JIT to compile (a few hundred active nodes) */
+	public static CompiledCircuit compile(Individual individual, BooleanFunction[] functions, int numInputs) {
+		byte[] classBytes = generateClass(individual, numInputs);
+		if(classBytes == null) return null;
+		
+		try {
+			Class<?> circuitClass = MethodHandles.lookup().defineHiddenClass(classBytes, true).lookupClass();
+			CompiledCircuit circuit = (CompiledCircuit)circuitClass.getDeclaredConstructor().newInstance();
+			circuit.functions = functions;
+			return circuit;
+		} catch(ReflectiveOperationException roe) {
+			throw new IllegalStateException("Could not load compiled circuit", roe);
+		}
+	}
+	
+	private static byte[] generateClass(Individual individual, int numInputs) {
+		CGP cgp = individual.getCGP();
+		int numRows = cgp.numberOfRows();
+		int outputBase = (cgp.numberOfCols() - 1) * numRows;
+		int[] genes = individual.genes;
+		int[] schedule = individual.activeSchedule();
+		
+		// Work out which input columns are read, each gets a local holding its long[]
+		ArrayList<Integer> usedInputs = new ArrayList<Integer>();
+		for(int address : schedule) {
+			int geneIndex = address * Individual.GENES_PER_NODE;
+			for(int input : new int[] {genes[geneIndex + Individual.INPUT0_GENE], genes[geneIndex + Individual.INPUT1_GENE]}) {
+				if(input == Individual.NO_GENE) {
+					return null; // unwired nodes (levelsBack of 0) can't be compiled
+				}
+				if(input < numRows && input < numInputs && !usedInputs.contains(input)) {
+					usedInputs.add(input);
+				}
+			}
+		}
+		int firstValueLocal = FIRST_COLUMN_LOCAL + usedInputs.size();
+		
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(GENERATED_CLASS);
+		int superClass = pool.classRef(CIRCUIT_CLASS);
+		int superInit = pool.methodRef(CIRCUIT_CLASS, "<init>", "()V");
+		int functionsField = pool.fieldRef(CIRCUIT_CLASS, "functions", "[L" + FUNCTION_CLASS + ";");
+		int evaluateBits = pool.methodRef(FUNCTION_CLASS, "evaluateBits", "(JJ)J");
+		int columnsClass = pool.classRef("[[J");
+		int columnClass = pool.classRef("[J");
+		int functionsClass = pool.classRef("[L" + FUNCTION_CLASS + ";");
+		int initName = pool.utf8("<init>");
+		int initDesc = pool.utf8("()V");
+		int evaluateName = pool.utf8("evaluate");
+		int evaluateDesc = pool.utf8("([[J[[JII)V");
+		int codeName = pool.utf8("Code");
+		int stackMapName = pool.utf8("StackMapTable");
+		
+		Code code = new Code();
+		
+		// Prologue: cache the function set and the used input columns in locals
+		code.op(ALOAD_0).op(GETFIELD).u2(functionsField).local(ASTORE, FUNCTIONS_LOCAL);
+		for(int i = 0; i < usedInputs.size(); i++) {
+			code.local(ALOAD, INPUTS_LOCAL).pushInt(usedInputs.get(i)).op(AALOAD).local(ASTORE, FIRST_COLUMN_LOCAL + i);
+		}
+		
+		// Loop header: exit once word reaches toWord
+		int loopStart = code.length();
+		code.local(ILOAD, WORD_LOCAL).local(ILOAD, TO_WORD_LOCAL);
+		int exitBranch = code.length();
+		code.op(IF_ICMPGE).u2(0); // patched below
+		
+		// Every node value lives in its own long local (two slots)
+		HashMap<Integer, Integer> locals = new HashMap<Integer, Integer>();
+		for(int i = 0; i < usedInputs.size(); i++) {
+			int local = allocateLocal(locals, usedInputs.get(i), firstValueLocal);
+			code.local(ALOAD, FIRST_COLUMN_LOCAL + i).local(ILOAD, WORD_LOCAL).op(LALOAD).local(LSTORE, local);
+		}
+		
+		for(int address : schedule) {
+			int geneIndex = address * Individual.GENES_PER_NODE;
+			code.local(ALOAD, FUNCTIONS_LOCAL).pushInt(genes[geneIndex + Individual.FUNCTION_GENE]).op(AALOAD);
+			loadValue(code, locals, genes[geneIndex + Individual.INPUT0_GENE]);
+			loadValue(code, locals, genes[geneIndex + Individual.INPUT1_GENE]);
+			code.op(INVOKEVIRTUAL).u2(evaluateBits);
+			code.local(LSTORE, allocateLocal(locals, address, firstValueLocal));
+			if(code.length() > MAX_CODE_LENGTH) {
+				return null;
+			}
+		}
+		
+		for(int row = 0; row < numRows; row++) {
+			code.local(ALOAD, OUTPUTS_LOCAL).pushInt(row).op(AALOAD).local(ILOAD, WORD_LOCAL);
+			loadValue(code, locals, outputBase + row);
+			code.op(LASTORE);
+		}
+		
+		// word++ and back to the loop header
+		code.op(WIDE).op(IINC).u2(WORD_LOCAL).u2(1);
+		code.op(GOTO).u2(loopStart - code.length() + 1);
+		int loopEnd = code.length();
+		code.op(RETURN);
+		code.patchU2(exitBranch + 1, loopEnd - exitBranch);
+		
+		int maxLocals = firstValueLocal + 2 * locals.size();
+		if(code.length() > MAX_CODE_LENGTH || maxLocals > 0xffff) {
+			return null;
+		}
+		
+		// Both branch targets see the same locals: this, inputs, outputs, word, toWord, functions and the input columns
+		Code frameLocals = new Code();
+		frameLocals.op(ITEM_OBJECT).u2(thisClass);
+		frameLocals.op(ITEM_OBJECT).u2(columnsClass);
+		frameLocals.op(ITEM_OBJECT).u2(columnsClass);
+		frameLocals.op(ITEM_INTEGER);
+		frameLocals.op(ITEM_INTEGER);
+		frameLocals.op(ITEM_OBJECT).u2(functionsClass);
+		for(int i = 0; i < usedInputs.size(); i++) {
+			frameLocals.op(ITEM_OBJECT).u2(columnClass);
+		}
+		Code stackMap = new Code();
+		stackMap.u2(2); // frames
+		stackMap.op(FULL_FRAME).u2(loopStart).u2(FIRST_COLUMN_LOCAL + usedInputs.size()).append(frameLocals).u2(0);
+		stackMap.op(FULL_FRAME).u2(loopEnd - loopStart - 1).u2(FIRST_COLUMN_LOCAL + usedInputs.size()).append(frameLocals).u2(0);
+		
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0); // minor version
+			out.writeShort(61); // Java 17
+			pool.write(out);
+			out.writeShort(0x0031); // public final super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(2); // methods
+			
+			// public <init>() { super(); }
+			Code init = new Code();
+			init.op(ALOAD_0).op(INVOKESPECIAL).u2(superInit).op(RETURN);
+			writeMethod(out, initName, initDesc, codeName, init, 1, 1, -1, null);
+			
+			writeMethod(out, evaluateName, evaluateDesc, codeName, code, 6, maxLocals, stackMapName, stackMap);
+			
+			out.writeShort(0); // class attributes
+			return bytes.toByteArray();
+		} catch(IOException ioe) {
+			throw new IllegalStateException(ioe); // can't happen with an in-memory stream
+		}
+	}
+	
+	/*** Pushes a node value, start nodes without a test input are 0 */
+	private static void loadValue(Code code, HashMap<Integer, Integer> locals, int address) {
+		Integer local = locals.get(address);
+		if(local == null) {
+			code.op(LCONST_0);
+		}
+		else {
+			code.local(LLOAD, local);
+		}
+	}
+	
+	private static int allocateLocal(HashMap<Integer, Integer> locals, int address, int firstValueLocal) {
+		int local = firstValueLocal + 2 * locals.size();
+		locals.put(address, local);
+		return local;
+	}
+	
+	private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName, Code code, int maxStack, int maxLocals,
+			int stackMapName, Code stackMap) throws IOException {
+		int stackMapLength = stackMap == null ? 0 : 6 + stackMap.length();
+		out.writeShort(0x0001); // public
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1); // attributes
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length() + stackMapLength);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length());
+		code.writeTo(out);
+		out.writeShort(0); // exception table
+		if(stackMap == null) {
+			out.writeShort(0); // code attributes
+		}
+		else {
+			out.writeShort(1);
+			out.writeShort(stackMapName);
+			out.writeInt(stackMap.length());
+			stackMap.writeTo(out);
+		}
+	}
+	
+	/*** Bytecode being assembled for one method */
+	private static class Code {
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		
+		Code op(int opcode) {
+			bytes.write(opcode);
+			return this;
+		}
+		
+		Code u2(int value) {
+			bytes.write(value >>> 8);
+			bytes.write(value);
+			return this;
+		}
+		
+		Code pushInt(int value) {
+			if(value == 0) {
+				return op(ICONST_0);
+			}
+			if(value <= Byte.MAX_VALUE) {
+				return op(BIPUSH).op(value);
+			}
+			return op(SIPUSH).u2(value); // indexes are row / function counts, well below Short.MAX_VALUE
+		}
+		
+		Code append(Code other) {
+			bytes.write(other.bytes.toByteArray(), 0, other.length());
+			return this;
+		}
+		
+		void patchU2(int offset, int value) {
+			byte[] patched = bytes.toByteArray();
+			patched[offset] = (byte)(value >>> 8);
+			patched[offset + 1] = (byte)value;
+			bytes.reset();
+			bytes.write(patched, 0, patched.length);
+		}
+		
+		/*** Emits a load/store of a local, widened when the local index doesn't fit in a byte */
+		Code local(int opcode, int local) {
+			if(local <= 0xff) {
+				return op(opcode).op(local);
+			}
+			return op(WIDE).op(opcode).u2(local);
+		}
+		
+		int length() {
+			return bytes.size();
+		}
+		
+		void writeTo(DataOutputStream out) throws IOException {
+			bytes.writeTo(out);
+		}
+	}
+	
+	/*** Constant pool of the generated class, entries are shared when asked for twice */
+	private static class ConstantPool {
+		private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private DataOutputStream out = new DataOutputStream(bytes);
+		private HashMap<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 1; // constant pool indexes start at 1
+		
+		int utf8(String value) {
+			Integer index = entries.get("U" + value);
+			if(index != null) return index;
+			try {
+				out.writeByte(1);
+				out.writeUTF(value);
+			} catch(IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+			return add("U" + value);
+		}
+		
+		int classRef(String internalName) {
+			return entry(7, "C" + internalName, utf8(internalName), -1);
+		}
+		
+		int nameAndType(String name, String descriptor) {
+			return entry(12, "N" + name + descriptor, utf8(name), utf8(descriptor));
+		}
+		
+		int fieldRef(String owner, String name, String descriptor) {
+			return entry(9, "F" + owner + "." + name + descriptor, classRef(owner), nameAndType(name, descriptor));
+		}
+		
+		int methodRef(String owner, String name, String descriptor) {
+			return entry(10, "M" + owner + "." + name + descriptor, classRef(owner), nameAndType(name, descriptor));
+		}
+		
+		private int entry(int tag, String key, int first, int second) {
+			Integer index = entries.get(key);
+			if(index != null) return index;
+			try {
+				out.writeByte(tag);
+				out.writeShort(first);
+				if(second >= 0) {
+					out.writeShort(second);
+				}
+			} catch(IOException ioe) {
+				throw new IllegalStateException(ioe);
+			}
+			return add(key);
+		}
+		
+		private int add(String key) {
+			entries.put(key, count);
+			return count++;
+		}
+		
+		void write(DataOutputStream classOut) throws IOException {
+			classOut.writeShort(count);
+			bytes.writeTo(classOut);
+		}
+	}
+}
@@ -0,0 +1,279 @@
+package Base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/*** Turns an evolved Boolean individual into a minimal straight-line program, see OptimizedCircuit.
+ *
+ * Every gate of the function set is reduced to its 4 entry truth table (probed through evaluateBits(), so any
+ * bitwise BooleanFunction works), and the active graph is rebuilt one node at a time, in evaluation order, with
+ * these rewrites:
+ * - dead code elimination: only the active nodes are visited, and gates a rewrite made unused are dropped at the end
+ * - constant folding: start nodes without a test input are false, gates of constants are constants
+ * - algebraic identities: a gate of the same operand twice (x ^ x, x & x), of a constant (x & 1, x | 1) or that
+ *   ignores one of its operands becomes a constant, its other operand or its inverse
+ * - collapsing: a gate whose operands only depend on two values in total (e.g. AND(AND(a, b), b), NAND(~a, ~b))
+ *   is replaced by a single gate of those two values, which also absorbs inverters
+ * - common subexpression elimination: identical gates (after ordering commutative operands) are built once
+ *
+ * The rewrites are local, so the result isn't guaranteed to be the smallest possible circuit, but it's never
+ * bigger than the active graph and it computes exactly the same outputs. */
+public class CircuitOptimizer {
+
+	// Truth tables are indexed by (a << 1) | b, these are the tables of the operands themselves
+	static final int A = 0xC;
+	static final int B = 0xA;
+	static final int NOT_A = 0x3;
+
+	// Value references: the constants, then the inputs, then the gates in the order they were built
+	static final int FALSE = 0;
+	static final int TRUE = 1;
+	static final int FIRST_INPUT = 2;
+
+	private static final long[] PROBES = {0x0123456789abcdefL, 0xf0e1d2c3b4a59687L, 0x5555aaaa3333ccccL, 0x00ff00ff0f0f0f0fL};
+
+	private int firstGate = 0;
+	private List<int[]> gates = new ArrayList<int[]>(); // {truth table, a, b}
+	private HashMap<Long, Integer> built = new HashMap<Long, Integer>(); // gate key -> reference, for CSE
+
+	private CircuitOptimizer(int numInputs) {
+		this.firstGate = FIRST_INPUT + numInputs;
+	}
+
+	/*** Optimizes the individual for as many inputs as its CGP's test cases have */
+	public static OptimizedCircuit optimize(Individual individual) {
+		CGP cgp = individual.getCGP();
+		int numInputs = cgp.numberOfRows();
+		if(cgp.getTestCaseSource() != null) {
+			numInputs = cgp.getTestCaseSource().getNumInputs();
+		}
+		else if(cgp.getTestCaseInputs() != null && cgp.getTestCaseInputs().length > 0) {
+			numInputs = cgp.getTestCaseInputs()[0].length;
+		}
+		return optimize(individual, numInputs);
+	}
+
+	/***
+	 * Optimizes the individual's active graph. The first numInputs start nodes are the circuit's inputs, the others are
+	 * false like during evaluation. Outputs the CGP ignores (see CGP.setOutputsToIgnore()) aren't computed, they're false
+	 * */
+	public static OptimizedCircuit optimize(Individual individual, int numInputs) {
+		CGP cgp = individual.getCGP();
+		int numRows = cgp.numberOfRows();
+		int[] truthTables = truthTables(cgp);
+		String[] gateNames = new String[16];
+		for(int f = cgp.numberOfFunctions() - 1; f >= 0; f--) {
+			gateNames[truthTables[f]] = cgp.getFunction(f).getName(); // the function set's names where it has the gate
+		}
+
+		CircuitOptimizer optimizer = new CircuitOptimizer(numInputs);
+		int[] genes = individual.genes;
+		int[] values = new int[genes.length / Individual.GENES_PER_NODE]; // reference of every visited node
+		for(int row = 0; row < numRows; row++) {
+			values[row] = row < numInputs ? FIRST_INPUT + row : FALSE;
+		}
+		for(int address : individual.activeSchedule()) {
+			int geneIndex = address * Individual.GENES_PER_NODE;
+			int input0 = genes[geneIndex + Individual.INPUT0_GENE];
+			int input1 = genes[geneIndex + Individual.INPUT1_GENE];
+			if(input0 == Individual.NO_GENE || input1 == Individual.NO_GENE) {
+				throw new IllegalArgumentException("Node " + address + " isn't wired, it can't be optimized");
+			}
+			values[address] = optimizer.gate(truthTables[genes[geneIndex + Individual.FUNCTION_GENE]], values[input0], values[input1]);
+		}
+
+		int outputBase = (cgp.numberOfCols() - 1) * numRows;
+		boolean[] ignored = cgp.getOutputsToIgnore();
+		int[] outputs = new int[numRows];
+		for(int row = 0; row < numRows; row++) {
+			outputs[row] = ignored != null && ignored[row] ? FALSE : values[outputBase + row];
+		}
+		return optimizer.program(numInputs, outputs, gateNames, individual.numberOfActiveNodes());
+	}
+
+	/*** Truth table of every function of the CGP, indexed like the function genes */
+	static int[] truthTables(CGP cgp) {
+		int[] truthTables = new int[cgp.numberOfFunctions()];
+		for(int f = 0; f < truthTables.length; f++) {
+			Function<?> function = cgp.getFunction(f);
+			if(!(function instanceof BooleanFunction)) {
+				throw new IllegalArgumentException("Function " + function.getName() + " is not a BooleanFunction, only Boolean circuits can be optimized");
+			}
+			BooleanFunction gate = (BooleanFunction)function;
+			int truthTable = (int)(gate.evaluateBits(A, B) & 0xF);
+
+			// The table only describes the gate if it works bit by bit, like BooleanFunction asks for
+			for(int i = 0; i < PROBES.length; i++) {
+				long a = PROBES[i], b = PROBES[(i + 1) % PROBES.length];
+				if(gate.evaluateBits(a, b) != apply(truthTable, a, b)) {
+					throw new IllegalArgumentException("Function " + gate.getName() + " doesn't work bit by bit, it can't be optimized");
+				}
+			}
+			truthTables[f] = truthTable;
+		}
+		return truthTables;
+	}
+
+	/*** Applies a gate's truth table to every bit of a and b */
+	static long apply(int truthTable, long a, long b) {
+		long result = 0;
+		if((truthTable & 1) != 0) result |= ~a & ~b;
+		if((truthTable & 2) != 0) result |= ~a & b;
+		if((truthTable & 4) != 0) result |= a & ~b;
+		if((truthTable & 8) != 0) result |= a & b;
+		return result;
+	}
+
+	/*** Returns a reference to the value of the gate applied to the values x and y, building as little as possible */
+	private int gate(int truthTable, int x, int y) {
+		// Constants and identical operands leave a function of one value
+		if(x <= TRUE) {
+			return unary(bit(truthTable, x, 0), bit(truthTable, x, 1), y);
+		}
+		if(y <= TRUE) {
+			return unary(bit(truthTable, 0, y), bit(truthTable, 1, y), x);
+		}
+		if(x == y) {
+			return unary(bit(truthTable, 0, 0), bit(truthTable, 1, 1), x);
+		}
+		// So does a gate that ignores an operand
+		if(bit(truthTable, 0, 0) == bit(truthTable, 1, 0) && bit(truthTable, 0, 1) == bit(truthTable, 1, 1)) {
+			return unary(bit(truthTable, 0, 0), bit(truthTable, 0, 1), y);
+		}
+		if(bit(truthTable, 0, 0) == bit(truthTable, 0, 1) && bit(truthTable, 1, 0) == bit(truthTable, 1, 1)) {
+			return unary(bit(truthTable, 0, 0), bit(truthTable, 1, 0), x);
+		}
+
+		// Operands that only depend on two values between them collapse into one gate of those two values
+		if(x >= firstGate || y >= firstGate) {
+			int[] support = new int[2];
+			int size = addSupport(support, 0, x);
+			size = size < 0 ? size : addSupport(support, size, y);
+			if(size > 0) {
+				int u = support[0];
+				int v = size > 1 ? support[1] : u;
+				int collapsed = (int)(apply(truthTable, pattern(x, u, v), pattern(y, u, v)) & 0xF);
+				return gate(collapsed, u, v);
+			}
+		}
+
+		if(x > y) {
+			int swap = x;
+			x = y;
+			y = swap;
+			truthTable = swapOperands(truthTable);
+		}
+		return build(truthTable, x, y);
+	}
+
+	/*** A function of the value z alone, given its results for z false (g0) and z true (g1) */
+	private int unary(int g0, int g1, int z) {
+		if(g0 == g1) {
+			return g0 == 0 ? FALSE : TRUE;
+		}
+		if(g0 == 0) {
+			return z;
+		}
+		if(z <= TRUE) {
+			return z == TRUE ? FALSE : TRUE;
+		}
+		if(z >= firstGate) {
+			int[] gate = gates.get(z - firstGate);
+			if(gate[0] == NOT_A && gate[1] == gate[2]) {
+				return gate[1]; // ~~z
+			}
+		}
+		return build(NOT_A, z, z);
+	}
+
+	/*** Adds the values x depends on directly (its operands if it's a gate, x itself otherwise) to the support.
+	 * Returns the new size, or -1 if that's more than 2 values */
+	private int addSupport(int[] support, int size, int x) {
+		if(x >= firstGate) {
+			int[] gate = gates.get(x - firstGate);
+			size = addValue(support, size, gate[1]);
+			return size < 0 ? size : addValue(support, size, gate[2]);
+		}
+		return addValue(support, size, x);
+	}
+
+	private static int addValue(int[] support, int size, int value) {
+		for(int i = 0; i < size; i++) {
+			if(support[i] == value) return size;
+		}
+		if(size == support.length) return -1;
+		support[size] = value;
+		return size + 1;
+	}
+
+	/*** Truth table of the value x as a function of u and v, which hold x's support */
+	private int pattern(int x, int u, int v) {
+		if(x == u) return A;
+		if(x == v) return B;
+		int[] gate = gates.get(x - firstGate);
+		return (int)(apply(gate[0], pattern(gate[1], u, v), pattern(gate[2], u, v)) & 0xF);
+	}
+
+	/*** The reference of the gate, built unless an identical one already was */
+	private int build(int truthTable, int x, int y) {
+		long key = ((long)truthTable << 56) | ((long)x << 28) | y;
+		Integer existing = built.get(key);
+		if(existing != null) {
+			return existing;
+		}
+		int reference = firstGate + gates.size();
+		gates.add(new int[] {truthTable, x, y});
+		built.put(key, reference);
+		return reference;
+	}
+
+	/*** Drops the gates the outputs don't use and renumbers the others */
+	private OptimizedCircuit program(int numInputs, int[] outputs, String[] gateNames, int activeNodes) {
+		boolean[] used = new boolean[gates.size()];
+		for(int output : outputs) {
+			if(output >= firstGate) {
+				used[output - firstGate] = true;
+			}
+		}
+		for(int g = gates.size() - 1; g >= 0; g--) { // operands are always built before the gates using them
+			if(used[g]) {
+				for(int operand = 1; operand <= 2; operand++) {
+					int reference = gates.get(g)[operand];
+					if(reference >= firstGate) {
+						used[reference - firstGate] = true;
+					}
+				}
+			}
+		}
+
+		int[] renumbered = new int[gates.size()];
+		List<int[]> program = new ArrayList<int[]>();
+		for(int g = 0; g < gates.size(); g++) {
+			if(used[g]) {
+				int[] gate = gates.get(g);
+				renumbered[g] = firstGate + program.size();
+				program.add(new int[] {gate[0], renumber(gate[1], renumbered), renumber(gate[2], renumbered)});
+			}
+		}
+		int[] programOutputs = new int[outputs.length];
+		for(int row = 0; row < outputs.length; row++) {
+			programOutputs[row] = renumber(outputs[row], renumbered);
+		}
+		return new OptimizedCircuit(numInputs, program.toArray(new int[program.size()][]), programOutputs, gateNames, activeNodes);
+	}
+
+	private int renumber(int reference, int[] renumbered) {
+		return reference >= firstGate ? renumbered[reference - firstGate] : reference;
+	}
+
+	/*** Result of the gate for the operand bits a and b */
+	static int bit(int truthTable, int a, int b) {
+		return (truthTable >>> ((a << 1) | b)) & 1;
+	}
+
+	/*** Truth table of the same gate with its operands swapped */
+	static int swapOperands(int truthTable) {
+		return (truthTable & 0x9) | ((truthTable & 0x2) << 1) | ((truthTable & 0x4) >>> 1);
+	}
+}
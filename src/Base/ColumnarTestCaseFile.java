@@ -0,0 +1,236 @@
+package Base;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*** Test cases stored column by column in a binary file that is memory-mapped instead of read onto the heap,
+ * so data sets far bigger than the heap can be evaluated and the GC never sees them.
+ *
+ * Layout (little endian): a 32 byte header (magic, version, value type, number of test cases, inputs, outputs)
+ * followed by the input columns and then the output columns. Boolean columns are bit-packed into longs exactly
+ * like BitParallelEvaluator packs them, other columns hold 8 bytes per test case. Every column is mapped on its own
+ * and so may be up to 2GB big (268 million LONG/DOUBLE test cases).
+ *
+ * Open an existing file with open(), or create one with create() + the set methods, with write() from Object[][]
+ * test cases or with CsvTestCaseConverter. */
+public class ColumnarTestCaseFile extends TestCaseSource implements Closeable {
+
+	private static final int MAGIC = 0x43475043; // "CGPC"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 32;
+
+	private FileChannel channel = null;
+	private boolean writable = false;
+	private Function.ValueType valueType = null;
+	private int numTestCases = 0;
+	private int numInputs = 0;
+	private int numOutputs = 0;
+	private MappedByteBuffer[] mappings = null;
+	private LongBuffer[] longColumns = null; // BOOLEAN and LONG files
+	private DoubleBuffer[] doubleColumns = null; // DOUBLE files
+
+	private ColumnarTestCaseFile(FileChannel channel, boolean writable, Function.ValueType valueType, int numTestCases, int numInputs, int numOutputs) throws IOException {
+		this.channel = channel;
+		this.writable = writable;
+		this.valueType = valueType;
+		this.numTestCases = numTestCases;
+		this.numInputs = numInputs;
+		this.numOutputs = numOutputs;
+
+		long columnBytes = columnBytes(valueType, numTestCases);
+		int numColumns = numInputs + numOutputs;
+		this.mappings = new MappedByteBuffer[numColumns];
+		if(valueType == Function.ValueType.DOUBLE) {
+			this.doubleColumns = new DoubleBuffer[numColumns];
+		}
+		else {
+			this.longColumns = new LongBuffer[numColumns];
+		}
+
+		FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+		for(int column = 0; column < numColumns; column++) {
+			MappedByteBuffer mapping = channel.map(mode, HEADER_BYTES + column * columnBytes, columnBytes);
+			mapping.order(ByteOrder.LITTLE_ENDIAN);
+			mappings[column] = mapping;
+			if(doubleColumns != null) {
+				doubleColumns[column] = mapping.asDoubleBuffer();
+			}
+			else {
+				longColumns[column] = mapping.asLongBuffer();
+			}
+		}
+	}
+
+	private static long columnBytes(Function.ValueType valueType, int numTestCases) {
+		long bytes = valueType == Function.ValueType.BOOLEAN ? (numTestCases + 63L) / 64 * 8 : numTestCases * 8L;
+		if(bytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(numTestCases + " test cases don't fit in a 2GB column");
+		}
+		return bytes;
+	}
+
+	/*** Maps an existing test case file read only */
+	public static ColumnarTestCaseFile open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			while(header.hasRemaining() && channel.read(header, header.position()) >= 0);
+			header.flip();
+			if(header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+				throw new IOException(path + " is not a columnar test case file");
+			}
+			int version = header.getInt();
+			if(version != VERSION) {
+				throw new IOException(path + " has unsupported version " + version);
+			}
+			Function.ValueType valueType = valueTypeOf(header.getInt());
+			int numTestCases = header.getInt();
+			int numInputs = header.getInt();
+			int numOutputs = header.getInt();
+
+			long expectedSize = HEADER_BYTES + (long)(numInputs + numOutputs) * columnBytes(valueType, numTestCases);
+			if(valueType == null || numTestCases < 0 || numInputs < 0 || numOutputs < 0 || channel.size() < expectedSize) {
+				throw new IOException(path + " is truncated or has a corrupt header");
+			}
+			return new ColumnarTestCaseFile(channel, false, valueType, numTestCases, numInputs, numOutputs);
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*** Creates (or overwrites) a zero filled test case file to be filled in with the set methods.
+	 * Close it to flush it to disk */
+	public static ColumnarTestCaseFile create(Path path, Function.ValueType valueType, int numTestCases, int numInputs, int numOutputs) throws IOException {
+		if(valueType == Function.ValueType.OBJECT) {
+			throw new IllegalArgumentException("Test case files hold BOOLEAN, LONG or DOUBLE values");
+		}
+		long size = HEADER_BYTES + (long)(numInputs + numOutputs) * columnBytes(valueType, numTestCases);
+
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(valueType.ordinal()).putInt(numTestCases).putInt(numInputs).putInt(numOutputs);
+			header.clear();
+			while(header.hasRemaining()) {
+				channel.write(header, header.position());
+			}
+			if(size > HEADER_BYTES) {
+				channel.write(ByteBuffer.allocate(1), size - 1); // grow the file to its full size
+			}
+			return new ColumnarTestCaseFile(channel, true, valueType, numTestCases, numInputs, numOutputs);
+		} catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*** Writes Object[][] test cases (as passed to CGP.setFitnessTestCases()) to a test case file */
+	public static void write(Path path, Function.ValueType valueType, Object[][] testCaseInputs, Object[][] testCaseOutputs) throws IOException {
+		int numInputs = testCaseInputs.length > 0 ? testCaseInputs[0].length : 0;
+		int numOutputs = testCaseOutputs.length > 0 ? testCaseOutputs[0].length : 0;
+		try(ColumnarTestCaseFile file = create(path, valueType, testCaseInputs.length, numInputs, numOutputs)) {
+			for(int tIndex = 0; tIndex < testCaseInputs.length; tIndex++) {
+				for(int input = 0; input < numInputs; input++) {
+					file.setValue(file.inputColumn(input), tIndex, testCaseInputs[tIndex][input]);
+				}
+				for(int output = 0; output < numOutputs; output++) {
+					file.setValue(file.outputColumn(output), tIndex, testCaseOutputs[tIndex][output]);
+				}
+			}
+		}
+	}
+
+	private static Function.ValueType valueTypeOf(int ordinal) {
+		Function.ValueType[] valueTypes = Function.ValueType.values();
+		return ordinal > 0 && ordinal < valueTypes.length ? valueTypes[ordinal] : null; // 0 is OBJECT
+	}
+
+	public Function.ValueType getValueType() {return valueType;}
+	public int getNumTestCases() {return numTestCases;}
+	public int getNumInputs() {return numInputs;}
+	public int getNumOutputs() {return numOutputs;}
+
+	public void readBits(int column, int fromWord, long[] dest, int count) {
+		checkType(Function.ValueType.BOOLEAN);
+		longColumns[column].get(fromWord, dest, 0, count);
+	}
+
+	public void readLongs(int column, int fromTestCase, long[] dest, int count) {
+		checkType(Function.ValueType.LONG);
+		longColumns[column].get(fromTestCase, dest, 0, count);
+	}
+
+	public void readDoubles(int column, int fromTestCase, double[] dest, int count) {
+		checkType(Function.ValueType.DOUBLE);
+		doubleColumns[column].get(fromTestCase, dest, 0, count);
+	}
+
+	// Writing. Not thread safe, Boolean values share words with their neighbours
+
+	public void setBoolean(int column, int testCase, boolean value) {
+		checkWritable(Function.ValueType.BOOLEAN);
+		LongBuffer words = longColumns[column];
+		long bit = 1L << (testCase & 63);
+		long word = words.get(testCase >>> 6);
+		words.put(testCase >>> 6, value ? word | bit : word & ~bit);
+	}
+
+	public void setLong(int column, int testCase, long value) {
+		checkWritable(Function.ValueType.LONG);
+		longColumns[column].put(testCase, value);
+	}
+
+	public void setDouble(int column, int testCase, double value) {
+		checkWritable(Function.ValueType.DOUBLE);
+		doubleColumns[column].put(testCase, value);
+	}
+
+	/*** Sets a boxed value, which has to fit the file's value type */
+	public void setValue(int column, int testCase, Object value) {
+		if(valueType == Function.ValueType.BOOLEAN && value instanceof Boolean) {
+			setBoolean(column, testCase, (Boolean)value);
+		}
+		else if(valueType == Function.ValueType.LONG && (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)) {
+			setLong(column, testCase, ((Number)value).longValue());
+		}
+		else if(valueType == Function.ValueType.DOUBLE && value instanceof Number) {
+			setDouble(column, testCase, ((Number)value).doubleValue());
+		}
+		else {
+			throw new IllegalArgumentException("Test case " + testCase + " has a value that isn't " + valueType + " in column " + column + ": " + value);
+		}
+	}
+
+	private void checkType(Function.ValueType expected) {
+		if(valueType != expected) {
+			throw new IllegalStateException("Test case file holds " + valueType + " values, not " + expected);
+		}
+	}
+
+	private void checkWritable(Function.ValueType expected) {
+		checkType(expected);
+		if(!writable) {
+			throw new IllegalStateException("Test case file was opened read only");
+		}
+	}
+
+	/*** Flushes a created file to disk. The mapped columns stay readable after closing */
+	public void close() throws IOException {
+		if(writable) {
+			for(MappedByteBuffer mapping : mappings) {
+				mapping.force();
+			}
+		}
+		channel.close();
+	}
+}
@@ -0,0 +1,14 @@
+package Base;
+
+/*** The active graph of an individual compiled into straight-line code by CircuitCompiler.
+ * Every node becomes its own call site in the generated method, so the JIT can inline each gate instead of
+ * going through one megamorphic call for all of them */
+public abstract class CompiledCircuit {
+	
+	BooleanFunction[] functions = null; // the CGP's function set, read by the generated code
+	
+	/*** Computes the packed output columns from the packed input columns, 64 test cases per word.
+	 * Both are indexed [row][word] and words fromWord (inclusive) to toWord (exclusive) are processed */
+	public abstract void evaluate(long[][] inputs, long[][] outputs, int fromWord, int toWord);
+	
+}
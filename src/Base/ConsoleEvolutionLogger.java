@@ -0,0 +1,52 @@
+package Base;
+
+/*** Prints the progress of an evolution to the console at most once per interval, plus the solution at the end.
+ * CGPs log through one of these by default, see CGP.setConsoleLogging() */
+public class ConsoleEvolutionLogger implements EvolutionListener {
+	
+	private long intervalNanos = 0;
+	private long lastLogNanos = 0;
+	private long evaluationsSinceLog = 0;
+	private boolean logged = false; // nothing printed yet this run
+	
+	public ConsoleEvolutionLogger(long intervalMillis) {
+		setInterval(intervalMillis);
+	}
+	
+	/*** Minimum time between two progress lines */
+	public void setInterval(long intervalMillis) {
+		this.intervalNanos = intervalMillis * 1000000;
+	}
+	
+	public long getInterval() {return intervalNanos / 1000000;}
+	
+	public void runStarted(CGP cgp) {
+		System.out.println("Evolving a " + cgp.numberOfRows() + "x" + cgp.numberOfCols() + " grid against " + cgp.getTotalTestCases() + " test cases");
+		logged = false;
+		evaluationsSinceLog = 0;
+	}
+	
+	public void generationCompleted(GenerationStats stats) {
+		evaluationsSinceLog += stats.getEvaluations();
+		
+		long now = System.nanoTime();
+		if(logged && now - lastLogNanos < intervalNanos) return;
+		
+		double seconds = logged ? (now - lastLogNanos) / 1e9 : stats.getNanos() / 1e9;
+		System.out.println(String.format("Generation %d: fitness %d/%d%s, %d active nodes, mutation rate %.4f, %.0f evaluations/s",
+				stats.getGeneration(), stats.getFitness(), stats.getTestCases(),
+				stats.getError() != 0 ? String.format(" (error %.4g)", stats.getError()) : "", stats.getActiveNodes(),
+				stats.getMutationRate(), seconds > 0 ? evaluationsSinceLog / seconds : 0));
+		
+		lastLogNanos = now;
+		evaluationsSinceLog = 0;
+		logged = true;
+	}
+	
+	public void runCompleted(Individual fittest, int generations) {
+		System.out.println("Took " + generations + " generations.");
+		System.out.println("Fittest individual was: " + fittest);
+		System.out.println("Fitness level: " + fittest.getCachedFitness());
+		System.out.println("Active nodes: " + fittest.numberOfActiveNodes());
+	}
+}
@@ -0,0 +1,97 @@
+package Base;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*** Converts a CSV file with one test case per line (the inputs followed by the expected outputs) to a
+ * ColumnarTestCaseFile. The CSV is streamed twice, once to count the test cases and once to fill in the
+ * columns, so it never has to fit in memory.
+ *
+ * Boolean values may be written as true/false or 1/0. Empty lines are skipped.
+ *
+ * Usage: java Base.CsvTestCaseConverter in.csv out.cgpc BOOLEAN|LONG|DOUBLE numInputs [--header] */
+public class CsvTestCaseConverter {
+
+	public static void convert(Path csv, Path out, Function.ValueType valueType, int numInputs, boolean hasHeader) throws IOException {
+		int numTestCases = 0;
+		int numColumns = -1;
+		try(BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+			if(hasHeader) reader.readLine();
+			int lineNumber = hasHeader ? 1 : 0;
+			String line;
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+				if(line.isBlank()) continue;
+				int columns = line.split(",", -1).length;
+				if(numColumns < 0) {
+					numColumns = columns;
+				}
+				else if(columns != numColumns) {
+					throw new IOException(csv + " line " + lineNumber + " has " + columns + " columns instead of " + numColumns);
+				}
+				numTestCases++;
+			}
+		}
+		if(numTestCases == 0) {
+			throw new IOException(csv + " has no test cases");
+		}
+		if(numInputs < 1 || numInputs >= numColumns) {
+			throw new IllegalArgumentException(csv + " has " + numColumns + " columns, so it can't have " + numInputs + " inputs and any outputs");
+		}
+
+		try(ColumnarTestCaseFile file = ColumnarTestCaseFile.create(out, valueType, numTestCases, numInputs, numColumns - numInputs);
+				BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+			if(hasHeader) reader.readLine();
+			int tIndex = 0;
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isBlank()) continue;
+				String[] values = line.split(",", -1);
+				for(int column = 0; column < numColumns; column++) {
+					setValue(file, column, tIndex, values[column].trim());
+				}
+				tIndex++;
+			}
+		}
+	}
+
+	private static void setValue(ColumnarTestCaseFile file, int column, int testCase, String value) {
+		try {
+			switch(file.getValueType()) {
+				case BOOLEAN:
+					file.setBoolean(column, testCase, parseBoolean(value));
+					break;
+				case LONG:
+					file.setLong(column, testCase, Long.parseLong(value));
+					break;
+				default:
+					file.setDouble(column, testCase, Double.parseDouble(value));
+			}
+		} catch(NumberFormatException nfe) {
+			throw new IllegalArgumentException("Test case " + testCase + " has a value that isn't " + file.getValueType() + " in column " + column + ": " + value);
+		}
+	}
+
+	private static boolean parseBoolean(String value) {
+		if(value.equals("1") || value.equalsIgnoreCase("true")) return true;
+		if(value.equals("0") || value.equalsIgnoreCase("false")) return false;
+		throw new NumberFormatException(value);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 4) {
+			System.out.println("Usage: java Base.CsvTestCaseConverter in.csv out.cgpc BOOLEAN|LONG|DOUBLE numInputs [--header]");
+			return;
+		}
+		boolean hasHeader = args.length > 4 && args[4].equals("--header");
+		convert(Paths.get(args[0]), Paths.get(args[1]), Function.ValueType.valueOf(args[2]), Integer.parseInt(args[3]), hasHeader);
+
+		try(ColumnarTestCaseFile file = ColumnarTestCaseFile.open(Paths.get(args[1]))) {
+			System.out.println("Wrote " + file);
+		}
+	}
+}
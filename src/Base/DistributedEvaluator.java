@@ -0,0 +1,522 @@
+package Base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*** Coordinator side of distributed fitness evaluation: evaluates offspring on EvaluationWorker processes,
+ * typically one JVM per core on one or more machines. See CGP.setDistributedEvaluator().
+ *
+ * Only genomes travel, as flat int arrays, and only the fitness and error come back. The CGP keeps breeding on
+ * its own thread, so a seeded run gives the same result whatever the number of workers.
+ *
+ * A generation's offspring are cut into batches of batchSize genomes (fewer round trips) that are dealt out to
+ * the workers' queues. Each worker keeps up to two batches in flight so it never waits for the next one, and a
+ * worker that runs out of batches steals from the back of the other queues, so slow or late starting workers
+ * get less work. When a worker dies (its stream ends or breaks) its batches are resubmitted to the others.
+ * A worker that hangs, sending no result for the response timeout while it has batches in flight, is killed (or its
+ * streams closed) by a watchdog thread and taken out the same way.
+ * A batch that kills MAX_ATTEMPTS workers fails the evaluation instead of taking down every worker, and a worker
+ * built for a different problem (see EvaluationWorker's hello) is taken out like one that died.
+ *
+ * Safe to share between threads, e.g. between islands. */
+public class DistributedEvaluator implements AutoCloseable {
+
+	private static final int MAX_ATTEMPTS = 3; // workers a batch may take down before the evaluation fails
+	private static final int BATCHES_IN_FLIGHT = 2; // per worker
+	private static final long EXIT_TIMEOUT_MILLIS = 5000; // for workers to exit once their input is closed
+	private static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 120000;
+	private static final long WATCHDOG_PERIOD_MILLIS = 1000; // longest time between two checks for hung workers
+
+	private String problemClass = null;
+	private List<String> jvmArguments = new ArrayList<String>();
+	private int batchSize = 8;
+	private volatile long responseTimeoutMillis = DEFAULT_RESPONSE_TIMEOUT_MILLIS;
+
+	private List<Connection> connections = new CopyOnWriteArrayList<Connection>();
+	private ConcurrentLinkedDeque<Batch> resubmitted = new ConcurrentLinkedDeque<Batch>(); // taken before any worker's own queue
+	private Object lock = new Object(); // guards job completion, worker deaths and idle workers waiting for batches
+	private int liveWorkers = 0;
+	private boolean closed = false;
+	private int nextConnection = 0; // worker the next batch is dealt to
+	private AtomicLong resubmittedBatches = new AtomicLong();
+	private AtomicLong evaluatedBatches = new AtomicLong();
+	private IOException lastDeath = null; // why the last worker died, guarded by lock
+	private Thread watchdog = null; // started with the first worker, guarded by lock
+
+	/*** Coordinator for workers launched by launchWorkers() from the given Supplier<CGP> class, see EvaluationWorker */
+	public DistributedEvaluator(String problemClass) {
+		this.problemClass = problemClass;
+	}
+
+	/*** Coordinator for workers connected with addWorker() only */
+	public DistributedEvaluator() {
+	}
+
+	/*** Genomes sent per round trip */
+	public void setBatchSize(int batchSize) {
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {return this.batchSize;}
+
+	/***
+	 * How long a worker with batches in flight may go without sending a result before it's taken out as hung, e.g.
+	 * stuck in an endless loop or thrashing the GC. Its batches then go to the other workers. Launched workers are
+	 * killed, workers added with addWorker() get their streams closed. Allow for the slowest batch, 2 minutes by
+	 * default, 0 waits forever
+	 * */
+	public void setResponseTimeout(long millis) {
+		if(millis < 0) {
+			throw new IllegalArgumentException("The response timeout can't be negative");
+		}
+		this.responseTimeoutMillis = millis;
+	}
+
+	public long getResponseTimeout() {return this.responseTimeoutMillis;}
+
+	/*** Extra arguments for the worker JVMs launched from now on, e.g. -Xmx512m */
+	public void setJvmArguments(String... jvmArguments) {
+		this.jvmArguments = new ArrayList<String>(Arrays.asList(jvmArguments));
+	}
+
+	/***
+	 * Starts count worker JVMs on this machine with this JVM's java executable and class path. Their stderr goes
+	 * to this JVM's stderr. The Vector API module is added when this JVM has it, see RegressionFunctions
+	 * */
+	public void launchWorkers(int count) throws IOException {
+		if(problemClass == null) {
+			throw new IllegalStateException("Launching workers needs the Supplier<CGP> class that builds the problem");
+		}
+		List<String> command = new ArrayList<String>();
+		command.add(ProcessHandle.current().info().command().orElse(System.getProperty("java.home") + "/bin/java"));
+		if(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+			command.add("--add-modules");
+			command.add("jdk.incubator.vector");
+		}
+		command.addAll(jvmArguments);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(EvaluationWorker.class.getName());
+		command.add(problemClass);
+
+		for(int i = 0; i < count; i++) {
+			Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+			connect(process.getInputStream(), process.getOutputStream(), process);
+		}
+	}
+
+	/***
+	 * Adds a worker that's reached through the given streams, e.g. the streams of a socket to a remote
+	 * EvaluationWorker.serve(). Closing in must end a blocked read for a hung worker to be taken out, as it does for sockets
+	 * */
+	public void addWorker(InputStream in, OutputStream out) {
+		connect(in, out, null);
+	}
+
+	private void connect(InputStream in, OutputStream out, Process process) {
+		Connection connection;
+		synchronized(lock) {
+			if(closed) {
+				throw new IllegalStateException("The evaluator is closed");
+			}
+			connection = new Connection(connections.size(), in, out, process);
+			connections.add(connection);
+			liveWorkers++;
+			if(watchdog == null) {
+				watchdog = new Thread(this::watch, "cgp-evaluation-watchdog");
+				watchdog.setDaemon(true);
+				watchdog.start();
+			}
+		}
+		connection.thread.start();
+	}
+
+	/*** Takes out the workers that have gone responseTimeoutMillis without a result, until the evaluator is closed */
+	private void watch() {
+		try {
+			while(true) {
+				long timeout = responseTimeoutMillis;
+				Thread.sleep(timeout > 0 ? Math.max(1, Math.min(WATCHDOG_PERIOD_MILLIS, timeout / 4)) : WATCHDOG_PERIOD_MILLIS);
+				if(timeout > 0) {
+					long now = System.nanoTime();
+					for(Connection connection : connections) {
+						connection.checkResponse(now, timeout);
+					}
+				}
+			}
+		} catch(InterruptedException ie) {
+			// closed
+		}
+	}
+
+	/***
+	 * Evaluates the individuals of cgp on the workers, bounded by threshold like Individual.calculateFitness(int),
+	 * and returns once every one of them has its fitness. Always on the full test set
+	 * */
+	void evaluate(CGP cgp, List<Individual> individuals, int threshold) {
+		if(individuals.isEmpty()) {
+			return;
+		}
+		Job job = new Job(cgp, threshold);
+		List<Batch> batches = new ArrayList<Batch>();
+		for(int from = 0; from < individuals.size(); from += batchSize) {
+			batches.add(new Batch(job, individuals.subList(from, Math.min(from + batchSize, individuals.size()))));
+		}
+		job.remaining = batches.size();
+
+		synchronized(lock) {
+			if(liveWorkers == 0) {
+				throw new IllegalStateException("No evaluation workers are running");
+			}
+			for(Batch batch : batches) {
+				// Deal the batches out round robin, idle workers steal what the others haven't started yet
+				Connection connection = nextLiveConnection();
+				connection.queue.addLast(batch);
+			}
+			lock.notifyAll();
+
+			try {
+				while(job.remaining > 0 && job.failure == null) {
+					if(liveWorkers == 0) {
+						fail(job, new IllegalStateException("Every evaluation worker died", lastDeath));
+						break;
+					}
+					lock.wait();
+				}
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				fail(job, new IllegalStateException("Interrupted while evaluating offspring", ie));
+			}
+			if(job.failure != null) {
+				throw job.failure;
+			}
+		}
+	}
+	
+	/*** Fails job and drops its batches that weren't sent yet. Called with lock held */
+	private void fail(Job job, RuntimeException failure) {
+		if(job.failure == null) {
+			job.failure = failure;
+		}
+		resubmitted.removeIf(batch -> batch.job == job);
+		for(Connection connection : connections) {
+			connection.queue.removeIf(batch -> batch.job == job);
+		}
+		lock.notifyAll();
+	}
+	
+	/*** Whether batch belongs to a job that failed, the batch is then dropped and its results ignored */
+	private boolean abandoned(Batch batch) {
+		synchronized(lock) {
+			return batch.job.failure != null;
+		}
+	}
+
+	private Connection nextLiveConnection() {
+		while(true) {
+			nextConnection = (nextConnection + 1) % connections.size();
+			Connection connection = connections.get(nextConnection);
+			if(connection.alive) {
+				return connection;
+			}
+		}
+	}
+
+	/*** The next batch for connection: a resubmitted one, the first of its own queue, or the last of another worker's queue */
+	private Batch takeBatch(Connection connection) {
+		Batch batch = resubmitted.pollFirst();
+		if(batch == null) {
+			batch = connection.queue.pollFirst();
+		}
+		for(int i = 1; batch == null && i < connections.size(); i++) {
+			batch = connections.get((connection.index + i) % connections.size()).queue.pollLast();
+		}
+		return batch;
+	}
+
+	private boolean hasBatches() {
+		if(!resubmitted.isEmpty()) {
+			return true;
+		}
+		for(Connection connection : connections) {
+			if(!connection.queue.isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int numberOfLiveWorkers() {
+		synchronized(lock) {
+			return liveWorkers;
+		}
+	}
+
+	/*** Batches that had to be sent again because their worker died */
+	public long getResubmittedBatches() {return resubmittedBatches.get();}
+	public long getEvaluatedBatches() {return evaluatedBatches.get();}
+
+	/*** Closes the workers' input, so they exit, and waits a while for launched workers before killing them */
+	public void close() {
+		synchronized(lock) {
+			closed = true;
+			lock.notifyAll();
+			if(watchdog != null) {
+				watchdog.interrupt();
+			}
+		}
+		for(Connection connection : connections) {
+			connection.thread.interrupt(); // only wakes it if it waits for a batch, blocked stream reads end when the worker exits
+			try {
+				connection.output.close();
+			} catch(IOException ioe) {
+				// already gone
+			}
+		}
+		for(Connection connection : connections) {
+			try {
+				if(connection.process != null && !connection.process.waitFor(EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+					connection.process.destroyForcibly();
+				}
+				connection.thread.join(EXIT_TIMEOUT_MILLIS);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/*** The individuals evaluated by one evaluate() call */
+	private static class Job {
+		private CGP cgp = null;
+		private int threshold = 0;
+		private int remaining = 0; // batches, guarded by lock
+		private RuntimeException failure = null; // guarded by lock
+
+		private Job(CGP cgp, int threshold) {
+			this.cgp = cgp;
+			this.threshold = threshold;
+		}
+	}
+
+	private static class Batch {
+		private Job job = null;
+		private List<Individual> individuals = null;
+		private int attempts = 0; // workers it was sent to
+
+		private Batch(Job job, List<Individual> individuals) {
+			this.job = job;
+			this.individuals = individuals;
+		}
+	}
+
+	/*** One worker and the thread that feeds it */
+	private class Connection implements Runnable {
+		private int index = 0;
+		private InputStream in = null;
+		private OutputStream out = null;
+		private DataInputStream input = null;
+		private DataOutputStream output = null;
+		private Process process = null; // null for workers added with addWorker()
+		private Thread thread = null;
+		private ConcurrentLinkedDeque<Batch> queue = new ConcurrentLinkedDeque<Batch>();
+		private volatile boolean alive = true;
+		private volatile long busySince = 0; // System.nanoTime() since when a result (or the hello) is due, 0 when idle
+		private volatile boolean hung = false; // taken out by the watchdog
+
+		private int genomeLength = 0; // from the worker's hello
+		private int totalTestCases = 0;
+		private int numFunctions = 0;
+		private CGP checkedCGP = null; // last CGP the worker's problem was checked against
+
+		private Connection(int index, InputStream in, OutputStream out, Process process) {
+			this.index = index;
+			this.in = in;
+			this.out = out;
+			this.input = new DataInputStream(new BufferedInputStream(in));
+			this.output = new DataOutputStream(new BufferedOutputStream(out));
+			this.process = process;
+			this.thread = new Thread(this, "cgp-evaluation-worker-" + index);
+			this.thread.setDaemon(true);
+			this.busySince = System.nanoTime(); // until the hello
+		}
+
+		public void run() {
+			ArrayDeque<Batch> inFlight = new ArrayDeque<Batch>(BATCHES_IN_FLIGHT);
+			try {
+				readHello();
+				busySince = 0;
+				while(true) {
+					while(inFlight.size() < BATCHES_IN_FLIGHT) {
+						Batch batch = takeBatch(this);
+						if(batch == null) {
+							break;
+						}
+						if(abandoned(batch)) {
+							continue; // taken just before its job failed
+						}
+						if(inFlight.isEmpty()) {
+							busySince = System.nanoTime();
+						}
+						inFlight.addLast(batch); // before sending, so that it's resubmitted if the worker dies meanwhile
+						send(batch);
+					}
+					output.flush();
+
+					if(!inFlight.isEmpty()) {
+						receive(inFlight.peekFirst());
+						inFlight.pollFirst(); // only once it's done, if the worker dies halfway through it's resubmitted
+						busySince = inFlight.isEmpty() ? 0 : System.nanoTime();
+						continue;
+					}
+					synchronized(lock) {
+						while(!closed && !hasBatches()) {
+							lock.wait();
+						}
+						if(closed) {
+							return;
+						}
+					}
+				}
+			} catch(IOException ioe) {
+				if(hung) {
+					ioe = new IOException("No result for " + responseTimeoutMillis + " ms, the worker was taken out as hung", ioe);
+				}
+				if(!closed) {
+					System.err.println(thread.getName() + " died: " + ioe);
+				}
+				synchronized(lock) {
+					lastDeath = ioe;
+				}
+			} catch(InterruptedException ie) {
+				// closed
+			} finally {
+				died(inFlight);
+			}
+		}
+
+		/*** Kills the worker, or closes its streams, if it has been busy for more than timeoutMillis. run() then takes it out */
+		private void checkResponse(long now, long timeoutMillis) {
+			long since = busySince;
+			if(!alive || hung || since == 0 || now - since <= timeoutMillis * 1000000) {
+				return;
+			}
+			hung = true;
+			if(process != null) {
+				process.destroyForcibly();
+				return;
+			}
+			// The raw streams, the buffered ones may be locked by a read or write of the blocked connection thread
+			try {
+				in.close();
+			} catch(IOException ioe) {
+				// already gone
+			}
+			try {
+				out.close();
+			} catch(IOException ioe) {
+				// already gone
+			}
+		}
+
+		private void readHello() throws IOException {
+			if(input.readInt() != EvaluationWorker.MAGIC || input.readInt() != EvaluationWorker.VERSION) {
+				throw new IOException("Not an evaluation worker, or a different protocol version");
+			}
+			genomeLength = input.readInt();
+			totalTestCases = input.readInt();
+			numFunctions = input.readInt();
+		}
+
+		/*** Sends batch. Throws an IOException, which takes the worker out, if its problem doesn't match the job's CGP */
+		private void send(Batch batch) throws IOException {
+			CGP cgp = batch.job.cgp;
+			if(cgp != checkedCGP) {
+				int expectedLength = cgp.numberOfCols() * cgp.numberOfRows() * Individual.GENES_PER_NODE;
+				if(genomeLength != expectedLength || totalTestCases != cgp.getTotalTestCases() || numFunctions != cgp.numberOfFunctions()) {
+					throw new IOException("Worker built for a different problem: " + genomeLength + " genes, " + totalTestCases
+							+ " test cases and " + numFunctions + " functions instead of " + expectedLength + ", "
+							+ cgp.getTotalTestCases() + " and " + cgp.numberOfFunctions());
+				}
+				checkedCGP = cgp;
+			}
+
+			batch.attempts++;
+			int firstGene = cgp.numberOfRows() * Individual.GENES_PER_NODE;
+			output.writeInt(batch.job.threshold);
+			output.writeInt(batch.individuals.size());
+			for(Individual individual : batch.individuals) {
+				for(int gene = firstGene; gene < genomeLength; gene++) {
+					output.writeInt(individual.genes[gene]);
+				}
+			}
+		}
+
+		/*** Reads the results of batch, they're only stored if its job hasn't failed meanwhile */
+		private void receive(Batch batch) throws IOException {
+			int[] fitness = new int[batch.individuals.size()];
+			double[] error = new double[fitness.length];
+			for(int i = 0; i < fitness.length; i++) {
+				fitness[i] = input.readInt();
+				error[i] = input.readDouble();
+			}
+			evaluatedBatches.incrementAndGet();
+			synchronized(lock) {
+				if(batch.job.failure != null) {
+					return;
+				}
+				for(int i = 0; i < fitness.length; i++) {
+					batch.individuals.get(i).evaluated(fitness[i], error[i], batch.job.threshold);
+				}
+				batch.job.remaining--;
+				lock.notifyAll();
+			}
+		}
+
+		/*** Takes the worker out and hands its unfinished batches to the others */
+		private void died(ArrayDeque<Batch> inFlight) {
+			synchronized(lock) {
+				if(process != null && !closed) {
+					process.destroyForcibly(); // e.g. it sent garbage, close() lets the others exit on their own
+				}
+				alive = false;
+				liveWorkers--;
+				for(Batch batch : inFlight) {
+					if(batch.job.failure != null) {
+						continue;
+					}
+					if(batch.attempts >= MAX_ATTEMPTS) {
+						fail(batch.job, new IllegalStateException("A batch of offspring took down " + batch.attempts + " evaluation workers"));
+					}
+					else {
+						resubmitted.addLast(batch);
+						resubmittedBatches.incrementAndGet();
+					}
+				}
+				Batch queued;
+				while((queued = queue.pollFirst()) != null) {
+					if(queued.job.failure == null) {
+						resubmitted.addLast(queued);
+					}
+				}
+				lock.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package Base;
+
+/*** A function on floating point values that can be evaluated without boxing */
+public abstract class DoubleFunction extends Function<Double> {
+
+	public DoubleFunction(String name) {
+		super(name);
+	}
+	
+	public abstract double evaluateDouble(double a, double b);
+	
+	/*** Applies the function to length test cases at once, out[i] = f(a[i], b[i]). Used by the RegressionEvaluator,
+	 * override it with a vectorized loop where that pays off (see RegressionFunctions) */
+	public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+		for(int i = 0; i < length; i++) {
+			out[i] = evaluateDouble(a[i], b[i]);
+		}
+	}
+	
+	public Double execute(Node a, Node b) {
+		return evaluateDouble(((Number)a.value()).doubleValue(), ((Number)b.value()).doubleValue());
+	}
+	
+	public ValueType getValueType() {
+		return ValueType.DOUBLE;
+	}
+}
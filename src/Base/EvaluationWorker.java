@@ -0,0 +1,90 @@
+package Base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+/*** Worker side of a DistributedEvaluator: evaluates batches of genomes sent by the coordinator and sends back
+ * their fitness.
+ *
+ * Run as a process, the worker builds its CGP from the Supplier<CGP> class named on the command line, which must
+ * set up the same grid, function set (in the same order) and test cases as the coordinator's CGP. The protocol
+ * runs over stdin and stdout, so anything the problem prints goes to stderr instead.
+ *
+ * Protocol, all values big endian (DataInput/DataOutput):
+ * the worker first sends a hello: MAGIC, VERSION, genome length, total test cases, number of functions.
+ * The coordinator then sends batches: threshold, count, then count genomes without their start node genes
+ * (which are always NO_GENE). The worker answers each batch, in order, with count (fitness, error) pairs.
+ * The worker exits when its input is closed. */
+public class EvaluationWorker {
+
+	static final int MAGIC = 0x43475057; // "CGPW"
+	static final int VERSION = 1;
+
+	/*** Usage: EvaluationWorker <class implementing Supplier<CGP>> */
+	public static void main(String[] args) throws Exception {
+		if(args.length != 1) {
+			System.err.println("Usage: EvaluationWorker <class implementing Supplier<CGP>>");
+			System.exit(1);
+		}
+		OutputStream out = new FileOutputStream(FileDescriptor.out);
+		System.setOut(System.err); // stdout carries the protocol
+
+		@SuppressWarnings("unchecked")
+		Supplier<CGP> problem = (Supplier<CGP>)Class.forName(args[0]).getDeclaredConstructor().newInstance();
+		CGP cgp = problem.get();
+		cgp.setConsoleLogging(false);
+
+		serve(cgp, System.in, out);
+	}
+
+	/*** Answers the batches read from in on out until in is closed. Can also serve a coordinator over a socket */
+	public static void serve(CGP cgp, InputStream in, OutputStream out) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(out));
+
+		int genomeLength = cgp.numberOfCols() * cgp.numberOfRows() * Individual.GENES_PER_NODE;
+		int firstGene = cgp.numberOfRows() * Individual.GENES_PER_NODE;
+
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(genomeLength);
+		output.writeInt(cgp.getTotalTestCases());
+		output.writeInt(cgp.numberOfFunctions());
+		output.flush();
+
+		int[] genes = new int[genomeLength];
+		for(int gene = 0; gene < firstGene; gene++) {
+			genes[gene] = Individual.NO_GENE;
+		}
+		Individual individual = cgp.newIndividual();
+		individual.setCGPSettings(cgp);
+
+		while(true) {
+			int threshold;
+			try {
+				threshold = input.readInt();
+			} catch(EOFException eof) {
+				return; // the coordinator is done
+			}
+			int count = input.readInt();
+			for(int i = 0; i < count; i++) {
+				for(int gene = firstGene; gene < genomeLength; gene++) {
+					genes[gene] = input.readInt();
+				}
+				individual.restore(genes, 0);
+				output.writeInt(individual.calculateFitness(threshold));
+				output.writeDouble(individual.getError());
+			}
+			output.flush();
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package Base;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/*** Records the parent lineage of a run, the fittest individual of every generation, so that any recorded generation's
+ * parent can be rebuilt afterwards. Register it with CGP.addEvolutionListener().
+ * 
+ * Only the genes that changed since the previous generation's parent are stored, as varints of the gap to the
+ * previous changed gene and the new value, which comes to 2-3 bytes per accepted mutation. Generations that kept
+ * their parent aren't stored at all. Every keyframeInterval records the full genome is stored (a keyframe) so that
+ * rebuilding a generation never replays more than keyframeInterval records.
+ * 
+ * The records are kept in a ring buffer of maxBytes: when it's full the oldest keyframe and its records are dropped,
+ * so long runs keep their most recent history. A new run (generation 0) clears the history. */
+public class EvolutionHistory implements EvolutionListener {
+	
+	private static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+	private static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+	
+	/*** A keyframe followed by the records of the generations after it */
+	private static class Segment {
+		private final int firstGeneration;
+		private int lastGeneration;
+		private int records = 0;
+		private byte[] bytes = new byte[256];
+		private int length = 0;
+		
+		Segment(int firstGeneration) {
+			this.firstGeneration = firstGeneration;
+			this.lastGeneration = firstGeneration;
+		}
+		
+		void writeVarint(int value) { // unsigned, 7 bits per byte
+			if(length + 5 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			while((value & ~0x7F) != 0) {
+				bytes[length++] = (byte)((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte)value;
+		}
+		
+		void writeSignedVarint(int value) { // zigzag, so small negative values stay small
+			writeVarint((value << 1) ^ (value >> 31));
+		}
+		
+		void trim() {
+			bytes = Arrays.copyOf(bytes, length);
+		}
+	}
+	
+	/*** Reads a segment back */
+	private static class Reader {
+		private final byte[] bytes;
+		private int position = 0;
+		
+		Reader(Segment segment) {
+			this.bytes = segment.bytes;
+		}
+		
+		int readVarint() {
+			int value = 0;
+			for(int shift = 0; ; shift += 7) {
+				byte b = bytes[position++];
+				value |= (b & 0x7F) << shift;
+				if(b >= 0) return value;
+			}
+		}
+		
+		int readSignedVarint() {
+			int value = readVarint();
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+	
+	private CGP cgp = null;
+	private long maxBytes = 0;
+	private int keyframeInterval = 0;
+	
+	private ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+	private long bytes = 0; // recorded bytes in all segments
+	private int[] lastGenes = null; // genome of the last recorded parent
+	private int lastFitness = 0;
+	private long changes = 0;
+	
+	public EvolutionHistory(CGP cgp) {
+		this(cgp, DEFAULT_MAX_BYTES, DEFAULT_KEYFRAME_INTERVAL);
+	}
+	
+	public EvolutionHistory(CGP cgp, long maxBytes, int keyframeInterval) {
+		this.cgp = cgp;
+		this.maxBytes = maxBytes;
+		this.keyframeInterval = keyframeInterval;
+	}
+	
+	public void generationCompleted(GenerationStats stats) {
+		record(stats.getGeneration(), stats.getParent());
+	}
+	
+	/*** Records parent as the fittest individual of the given generation. Generation 0 starts a new history */
+	public synchronized void record(int generation, Individual parent) {
+		int[] genes = parent.genes;
+		int fitness = parent.getCachedFitness();
+		
+		if(generation == 0 || lastGenes == null || lastGenes.length != genes.length) {
+			clear();
+		}
+		else if(generation <= segments.getLast().lastGeneration) {
+			throw new IllegalArgumentException("Generation " + generation + " was recorded after generation " + segments.getLast().lastGeneration);
+		}
+		
+		Segment segment = segments.peekLast();
+		if(segment == null || segment.records >= keyframeInterval) {
+			if(segment != null) {
+				segment.trim(); // it's complete, drop its spare capacity
+			}
+			writeKeyframe(generation, genes, fitness);
+		}
+		else {
+			writeDelta(segment, generation, genes, fitness);
+		}
+		
+		dropOldSegments();
+	}
+	
+	private void writeKeyframe(int generation, int[] genes, int fitness) {
+		Segment segment = new Segment(generation);
+		segment.writeVarint(genes.length);
+		segment.writeSignedVarint(fitness);
+		for(int gene : genes) {
+			segment.writeVarint(gene + 1); // start nodes hold NO_GENE (-1)
+		}
+		segments.addLast(segment);
+		bytes += segment.length;
+		
+		lastGenes = genes.clone();
+		lastFitness = fitness;
+	}
+	
+	private void writeDelta(Segment segment, int generation, int[] genes, int fitness) {
+		int numChanges = 0;
+		for(int i = 0; i < genes.length; i++) {
+			if(genes[i] != lastGenes[i]) numChanges++;
+		}
+		if(numChanges == 0 && fitness == lastFitness) {
+			return; // the generation kept its parent
+		}
+		
+		int start = segment.length;
+		segment.writeVarint(generation - segment.lastGeneration);
+		segment.writeSignedVarint(fitness - lastFitness);
+		segment.writeVarint(numChanges);
+		int previous = -1;
+		for(int i = 0; i < genes.length; i++) {
+			if(genes[i] != lastGenes[i]) {
+				segment.writeVarint(i - previous - 1);
+				segment.writeVarint(genes[i] + 1);
+				lastGenes[i] = genes[i];
+				previous = i;
+			}
+		}
+		segment.lastGeneration = generation;
+		segment.records++;
+		bytes += segment.length - start;
+		lastFitness = fitness;
+		changes += numChanges;
+	}
+	
+	private void dropOldSegments() {
+		while(bytes > maxBytes && segments.size() > 1) {
+			bytes -= segments.removeFirst().length;
+		}
+	}
+	
+	/*** 
+	 * Rebuilds the parent of the given generation, i.e. the last recorded parent at or before it, with the fitness
+	 * it was recorded with. Generations after the last recorded one give the latest parent.
+	 * Throws IllegalArgumentException if the generation was dropped from the ring buffer
+	 * */
+	public synchronized Individual getIndividual(int generation) {
+		Segment segment = null;
+		for(Iterator<Segment> it = segments.descendingIterator(); it.hasNext();) {
+			Segment candidate = it.next();
+			if(candidate.firstGeneration <= generation) {
+				segment = candidate;
+				break;
+			}
+		}
+		if(segment == null) {
+			throw new IllegalArgumentException("Generation " + generation + " isn't in the history, it holds generations "
+					+ getFirstGeneration() + " and later");
+		}
+		
+		Reader reader = new Reader(segment);
+		int[] genes = new int[reader.readVarint()];
+		int fitness = reader.readSignedVarint();
+		for(int i = 0; i < genes.length; i++) {
+			genes[i] = reader.readVarint() - 1;
+		}
+		
+		int recordGeneration = segment.firstGeneration;
+		for(int record = 0; record < segment.records; record++) {
+			recordGeneration += reader.readVarint();
+			if(recordGeneration > generation) break;
+			
+			fitness += reader.readSignedVarint();
+			int numChanges = reader.readVarint();
+			int index = -1;
+			for(int change = 0; change < numChanges; change++) {
+				index += reader.readVarint() + 1;
+				genes[index] = reader.readVarint() - 1;
+			}
+		}
+		
+		Individual individual = cgp.newIndividual();
+		individual.setCGPSettings(cgp);
+		individual.restore(genes, fitness);
+		return individual;
+	}
+	
+	/*** Forgets everything recorded */
+	public synchronized void clear() {
+		segments.clear();
+		bytes = 0;
+		lastGenes = null;
+		changes = 0;
+	}
+	
+	/*** The oldest generation that can be rebuilt, -1 if nothing is recorded */
+	public synchronized int getFirstGeneration() {
+		return segments.isEmpty() ? -1 : segments.getFirst().firstGeneration;
+	}
+	
+	/*** The last generation whose parent changed, -1 if nothing is recorded */
+	public synchronized int getLastGeneration() {
+		return segments.isEmpty() ? -1 : segments.getLast().lastGeneration;
+	}
+	
+	/*** Bytes taken by the recorded generations */
+	public synchronized long sizeInBytes() {return bytes;}
+	
+	/*** Gene changes recorded since the history was last cleared, including those of dropped generations */
+	public synchronized long numberOfChanges() {return changes;}
+	
+	public synchronized String toString() {
+		return "Evolution history of generations " + getFirstGeneration() + " to " + getLastGeneration() + ": "
+				+ changes + " gene changes in " + bytes + " bytes";
+	}
+}
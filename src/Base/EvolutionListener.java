@@ -0,0 +1,25 @@
+package Base;
+
+/*** Receives the progress of a CGP's evolution, see CGP.addEvolutionListener().
+ * Every method is called on the thread that drives the evolution (the one calling testEvolve() or
+ * evolveGeneration()), never on the threads that evaluate offspring in parallel. Islands of an IslandModel
+ * don't report to listeners */
+public interface EvolutionListener {
+	
+	/*** Called when testEvolve() starts */
+	default void runStarted(CGP cgp) {
+	}
+	
+	/*** Called for every offspring once it's evaluated. parent is the individual it was bred from,
+	 * or null for the random individuals of the initial generation */
+	default void offspringEvaluated(Individual offspring, Individual parent) {
+	}
+	
+	/*** Called at the end of every generation, generation 0 being the initial random individuals */
+	default void generationCompleted(GenerationStats stats) {
+	}
+	
+	/*** Called when testEvolve() found a solution */
+	default void runCompleted(Individual fittest, int generations) {
+	}
+}
@@ -0,0 +1,119 @@
+package Base;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*** Listener that keeps running counters and histograms of an evolution: evaluations per second, generation
+ * latency, active node counts, improving/neutral/worsening offspring ratios and the fitness cache hit rate.
+ * May be read from any thread while the evolution runs, e.g. by a monitoring thread */
+public class EvolutionMetrics implements EvolutionListener {
+	
+	private final LongAdder generations = new LongAdder();
+	private final LongAdder offspring = new LongAdder();
+	private final LongAdder evaluations = new LongAdder();
+	private final LongAdder improving = new LongAdder();
+	private final LongAdder neutral = new LongAdder();
+	private final LongAdder worsening = new LongAdder();
+	private final Histogram generationNanos = new Histogram();
+	private final Histogram activeNodes = new Histogram();
+	private volatile long startNanos = 0;
+	private volatile CGP cgp = null;
+	
+	public void runStarted(CGP cgp) {
+		this.cgp = cgp;
+		this.startNanos = System.nanoTime();
+	}
+	
+	public void generationCompleted(GenerationStats stats) {
+		if(startNanos == 0) {
+			startNanos = System.nanoTime() - stats.getNanos(); // generations evolved without testEvolve()
+		}
+		generations.increment();
+		offspring.add(stats.getOffspring());
+		evaluations.add(stats.getEvaluations());
+		improving.add(stats.getImproving());
+		neutral.add(stats.getNeutral());
+		worsening.add(stats.getWorsening());
+		generationNanos.record(stats.getNanos());
+		activeNodes.record(stats.getActiveNodes());
+	}
+	
+	public long getGenerations() {return generations.sum();}
+	public long getOffspring() {return offspring.sum();}
+	public long getEvaluations() {return evaluations.sum();}
+	
+	/*** Evaluations per second since the run started */
+	public double getEvaluationsPerSecond() {
+		long elapsed = System.nanoTime() - startNanos;
+		return startNanos == 0 || elapsed <= 0 ? 0 : getEvaluations() * 1e9 / elapsed;
+	}
+	
+	public double getImprovingRatio() {return ratio(improving.sum());}
+	public double getNeutralRatio() {return ratio(neutral.sum());}
+	public double getWorseningRatio() {return ratio(worsening.sum());}
+	
+	private double ratio(long count) {
+		long total = offspring.sum();
+		return total == 0 ? 0 : (double)count / total;
+	}
+	
+	/*** Hit rate of the CGP's fitness cache, 0 without one */
+	public double getCacheHitRate() {
+		FitnessCache cache = cgp != null ? cgp.getFitnessCache() : null;
+		return cache != null ? cache.getHitRate() : 0;
+	}
+	
+	/*** Wall clock nanoseconds per generation */
+	public Histogram getGenerationLatency() {return generationNanos;}
+	
+	/*** Active nodes of each generation's parent */
+	public Histogram getActiveNodes() {return activeNodes;}
+	
+	public String toString() {
+		return String.format("%d generations, %.0f evaluations/s, generation latency p50 %dus p99 %dus, active nodes p50 %d max %d, "
+				+ "offspring %.1f%% improving %.1f%% neutral %.1f%% worsening, cache hit rate %.1f%%",
+				getGenerations(), getEvaluationsPerSecond(), generationNanos.getPercentile(0.5) / 1000, generationNanos.getPercentile(0.99) / 1000,
+				activeNodes.getPercentile(0.5), activeNodes.getMax(),
+				getImprovingRatio() * 100, getNeutralRatio() * 100, getWorseningRatio() * 100, getCacheHitRate() * 100);
+	}
+	
+	/*** Lock-free histogram of non-negative values in power of two buckets, so percentiles are accurate to within 2x */
+	public static class Histogram {
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(65); // bucket b holds values of b bits, bucket 0 holds 0
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+		
+		public void record(long value) {
+			value = Math.max(0, value);
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+		
+		public long getCount() {return count.sum();}
+		public long getMax() {return max.get();}
+		
+		public double getMean() {
+			long n = count.sum();
+			return n == 0 ? 0 : (double)sum.sum() / n;
+		}
+		
+		/*** Upper bound of the bucket holding the given percentile (between 0 and 1), capped at the maximum */
+		public long getPercentile(double percentile) {
+			long rank = (long)Math.ceil(percentile * count.sum());
+			long seen = 0;
+			for(int bucket = 0; bucket < buckets.length(); bucket++) {
+				seen += buckets.get(bucket);
+				if(seen >= rank && seen > 0) {
+					long upperBound = bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+					return Math.min(upperBound, getMax());
+				}
+			}
+			return getMax();
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package Base;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*** JFR event spanning a whole CGP.testEvolve() run */
+@Name("cgp.EvolutionRun")
+@Label("CGP Evolution Run")
+@Category("CGP")
+class EvolutionRunEvent extends Event {
+	
+	@Label("Generations")
+	int generations;
+	
+	@Label("Fitness")
+	int fitness;
+	
+	@Label("Test Cases")
+	int testCases;
+	
+	@Label("Active Nodes")
+	int activeNodes;
+}
@@ -0,0 +1,179 @@
+package Base;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*** Remembers the fitness of phenotypes that were already evaluated during a run.
+ * 
+ * Neutral drift keeps revisiting the same active circuits under different inactive genes and node positions.
+ * The cache key is a canonical form of the active subgraph: nodes are numbered in the order a depth first
+ * walk from the outputs first reaches them, and identical (function, input, input) nodes are merged. So the
+ * key doesn't depend on where nodes sit in the grid or on anything inactive.
+ * 
+ * The cache holds at most maxEntries phenotypes, evicting the least recently used one. It's safe to share
+ * between threads evaluating in parallel. */
+public class FitnessCache {
+	
+	private int maxEntries = 0;
+	private LinkedHashMap<PhenotypeKey, Integer> entries = null;
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	
+	public FitnessCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<PhenotypeKey, Integer>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<PhenotypeKey, Integer> eldest) {
+				return size() > FitnessCache.this.maxEntries;
+			}
+		};
+	}
+	
+	/*** Returns the cached fitness of the phenotype, or null if it isn't cached */
+	public Integer get(PhenotypeKey key) {
+		Integer fitness;
+		synchronized(entries) {
+			fitness = entries.get(key);
+		}
+		if(fitness == null) {
+			misses.increment();
+		}
+		else {
+			hits.increment();
+		}
+		return fitness;
+	}
+	
+	/*** Caches the fitness of a fully evaluated phenotype */
+	public void put(PhenotypeKey key, int fitness) {
+		synchronized(entries) {
+			entries.put(key, fitness);
+		}
+	}
+	
+	/*** Drops every cached fitness, e.g. when the test cases change. Statistics are kept */
+	public void clear() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+	
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+	
+	public int getMaxEntries() {return maxEntries;}
+	public long getHits() {return hits.sum();}
+	public long getMisses() {return misses.sum();}
+	
+	/*** Fraction of lookups answered from the cache, 0 when there hasn't been any */
+	public double getHitRate() {
+		long hits = getHits();
+		long lookups = hits + getMisses();
+		return lookups == 0 ? 0 : (double)hits / lookups;
+	}
+	
+	public String toString() {
+		return "FitnessCache size:" + size() + "/" + maxEntries + " hits:" + getHits() + " misses:" + getMisses()
+				+ String.format(" hitRate:%.3f", getHitRate());
+	}
+	
+	/*** Builds the canonical key of the individual's active subgraph */
+	public static PhenotypeKey keyOf(Individual individual) {
+		CGP cgp = individual.getCGP();
+		int[] genes = individual.genes;
+		int numRows = cgp.numberOfRows();
+		int numNodes = genes.length / Individual.GENES_PER_NODE;
+		int outputBase = numNodes - numRows;
+		if(numNodes >= 1 << 20) {
+			throw new IllegalArgumentException("Grids of more than " + ((1 << 20) - 1) + " nodes can't be cached");
+		}
+		int unwired = -(numRows + 1); // id of a missing input (levelsBack of 0)
+		
+		// Canonical id of every visited node. Start nodes are -(row + 1), the others number their distinct (function, input, input).
+		// Ids fit in 21 bits, so a node packs into a long for interning
+		int[] canonicalIds = new int[numNodes];
+		boolean[] visited = new boolean[numNodes];
+		HashMap<Long, Integer> internedNodes = new HashMap<Long, Integer>();
+		int[] encoding = new int[(numNodes - numRows) * 3 + numRows];
+		int encodingLength = 0;
+		
+		// Depth first walk from the outputs, with an explicit stack so deep grids don't overflow the call stack
+		int[] stack = new int[numNodes];
+		for(int output = outputBase; output < numNodes; output++) {
+			int stackSize = 0;
+			stack[stackSize++] = output;
+			while(stackSize > 0) {
+				int address = stack[stackSize - 1];
+				if(visited[address]) {
+					stackSize--;
+					continue;
+				}
+				if(address < numRows) {
+					canonicalIds[address] = -(address + 1);
+					visited[address] = true;
+					stackSize--;
+					continue;
+				}
+				
+				int geneIndex = address * Individual.GENES_PER_NODE;
+				int input0 = genes[geneIndex + Individual.INPUT0_GENE];
+				int input1 = genes[geneIndex + Individual.INPUT1_GENE];
+				if(input0 != Individual.NO_GENE && !visited[input0]) {
+					stack[stackSize++] = input0;
+				}
+				else if(input1 != Individual.NO_GENE && !visited[input1]) {
+					stack[stackSize++] = input1;
+				}
+				else {
+					// Both inputs are known, so this node can be interned
+					int function = genes[geneIndex + Individual.FUNCTION_GENE];
+					int id0 = input0 == Individual.NO_GENE ? unwired : canonicalIds[input0];
+					int id1 = input1 == Individual.NO_GENE ? unwired : canonicalIds[input1];
+					long node = ((long)function << 42) ^ ((long)(id0 & 0x1fffff) << 21) ^ (id1 & 0x1fffff);
+					Integer id = internedNodes.get(node);
+					if(id == null) {
+						id = internedNodes.size();
+						internedNodes.put(node, id);
+						encoding[encodingLength++] = function;
+						encoding[encodingLength++] = id0;
+						encoding[encodingLength++] = id1;
+					}
+					canonicalIds[address] = id;
+					visited[address] = true;
+					stackSize--;
+				}
+			}
+		}
+		
+		for(int output = outputBase; output < numNodes; output++) {
+			encoding[encodingLength++] = canonicalIds[output];
+		}
+		
+		return new PhenotypeKey(Arrays.copyOf(encoding, encodingLength));
+	}
+	
+	/*** Canonical encoding of an active subgraph, see keyOf() */
+	public static final class PhenotypeKey {
+		private final int[] encoding;
+		private final int hash;
+		
+		private PhenotypeKey(int[] encoding) {
+			this.encoding = encoding;
+			this.hash = Arrays.hashCode(encoding);
+		}
+		
+		public int hashCode() {
+			return hash;
+		}
+		
+		public boolean equals(Object other) {
+			return other instanceof PhenotypeKey && hash == ((PhenotypeKey)other).hash
+					&& Arrays.equals(encoding, ((PhenotypeKey)other).encoding);
+		}
+	}
+}
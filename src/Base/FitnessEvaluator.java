@@ -0,0 +1,36 @@
+package Base;
+
+/*** Scores an individual against the fitness test cases of its CGP.
+ * Plug one in with CGP.setFitnessEvaluator() to replace the default interpreted evaluation
+ * performed by Individual.calculateFitness() */
+public abstract class FitnessEvaluator {
+	
+	/*** Called when the evaluator is attached to a CGP and whenever that CGP's test cases change */
+	public void prepare(CGP cgp) {
+	}
+	
+	/*** Returns the number of test cases the individual passes.
+	 * May be called from several threads at once when the CGP evaluates offspring in parallel */
+	public abstract int evaluate(Individual individual);
+	
+	/*** Bounded evaluation: may stop as soon as the individual provably can't pass threshold test cases.
+	 * In that case the returned (partial) count is below threshold. Evaluators that can't stop early
+	 * simply do a full evaluation */
+	public int evaluate(Individual individual, int threshold) {
+		return evaluate(individual);
+	}
+	
+	/*** Bounded evaluation on a sample of the test cases only (see SamplingStrategy).
+	 * Evaluators in this package also record which sampled test cases passed, for lexicase selection.
+	 * Evaluators that can't evaluate samples throw an UnsupportedOperationException */
+	public int evaluate(Individual individual, int threshold, TestCaseSample sample) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " can't evaluate test case samples");
+	}
+	
+	/*** Whether evaluate(Individual, int, TestCaseSample) is implemented. The CGP refuses to combine a sampling
+	 * strategy with an evaluator that doesn't, instead of failing at the first sampled generation */
+	public boolean supportsSamples() {
+		return false;
+	}
+	
+}
@@ -0,0 +1,23 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Breeds every offspring with the same mutation rate, the CGP's default (0.20) */
+public class FixedRate extends MutationRateController {
+
+	private double rate = 0;
+
+	public FixedRate(double rate) {
+		this.rate = rate;
+	}
+
+	public double offspringRate(Individual parent, RandomGenerator random) {
+		return rate;
+	}
+
+	public double getRate() {return this.rate;}
+
+	public String toString() {
+		return "fixed rate " + rate;
+	}
+}
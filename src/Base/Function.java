@@ -2,6 +2,15 @@ package Base;
 
 public class Function<T> {
 
+	/*** The kind of values a function works on. Primitive kinds are evaluated without boxing
+	 * through BooleanFunction, LongFunction and DoubleFunction, OBJECT goes through execute() */
+	public static enum ValueType {
+		OBJECT,
+		BOOLEAN,
+		LONG,
+		DOUBLE
+	}
+	
 	private String name = "";
 	
 	public Function(String name) {
@@ -12,6 +21,10 @@ public class Function<T> {
 		return null;
 	}
 	
+	public ValueType getValueType() {
+		return ValueType.OBJECT;
+	}
+	
 	public String getName() {
 		return this.name;
 	}
@@ -0,0 +1,52 @@
+package Base;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*** JFR event committed by the CGP for every generation, so runs can be watched in JDK Mission Control.
+ * Costs next to nothing unless a recording enables it, e.g. java -XX:StartFlightRecording ... */
+@Name("cgp.Generation")
+@Label("CGP Generation")
+@Category("CGP")
+@Description("One generation of a (1+lambda) CGP evolution")
+class GenerationEvent extends Event {
+	
+	@Label("Generation")
+	int generation;
+	
+	@Label("Fitness")
+	@Description("Test cases passed by the generation's parent")
+	int fitness;
+	
+	@Label("Test Cases")
+	int testCases;
+	
+	@Label("Error")
+	@Description("Error of the generation's parent, for evaluators that measure one")
+	double error;
+	
+	@Label("Active Nodes")
+	int activeNodes;
+	
+	@Label("Mutation Rate")
+	@Description("Mean mutation rate the generation's offspring were bred with")
+	double mutationRate;
+	
+	@Label("Offspring")
+	int offspring;
+	
+	@Label("Evaluations")
+	int evaluations;
+	
+	@Label("Improving Offspring")
+	int improving;
+	
+	@Label("Neutral Offspring")
+	int neutral;
+	
+	@Label("Worsening Offspring")
+	int worsening;
+}
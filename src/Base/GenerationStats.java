@@ -0,0 +1,84 @@
+package Base;
+
+/*** What happened during one generation, passed to EvolutionListener.generationCompleted().
+ * Offspring are improving, neutral or worsening compared to the individual they were bred from. Offspring whose
+ * mutations only hit inactive genes are neutral without being evaluated */
+public class GenerationStats {
+	
+	private int generation = 0;
+	private int offspring = 0;
+	private int evaluations = 0;
+	private int improving = 0;
+	private int neutral = 0;
+	private int worsening = 0;
+	private double mutationRateSum = 0;
+	private Individual parent = null;
+	private int testCases = 0;
+	private long nanos = 0;
+	
+	GenerationStats(int generation) {
+		this.generation = generation;
+	}
+	
+	void record(Individual offspring, Individual parent) {
+		this.offspring++;
+		if(parent == null) {
+			evaluations++;
+			return;
+		}
+		mutationRateSum += offspring.getMutationRate();
+		if(offspring.activeGenesChanged()) {
+			evaluations++;
+		}
+		if(offspring.isFitterThan(parent)) {
+			improving++;
+		}
+		else if(offspring.isAtLeastAsFitAs(parent) && !offspring.isRejected()) {
+			neutral++;
+		}
+		else {
+			worsening++;
+		}
+	}
+	
+	void complete(Individual parent, int testCases, long nanos) {
+		this.parent = parent;
+		this.testCases = testCases;
+		this.nanos = nanos;
+	}
+	
+	public int getGeneration() {return generation;}
+	
+	/*** The parent the generation produced, i.e. its fittest individual */
+	public Individual getParent() {return parent;}
+	public int getFitness() {return parent.getCachedFitness();}
+	public double getError() {return parent.getError();}
+	
+	/*** Number of test cases the fitness is out of, the sample size when the CGP samples test cases */
+	public int getTestCases() {return testCases;}
+	
+	public int getActiveNodes() {return parent.numberOfActiveNodes();}
+	
+	public int getOffspring() {return offspring;}
+	
+	/*** Offspring that were evaluated, the others inherited their parent's fitness */
+	public int getEvaluations() {return evaluations;}
+	
+	public int getImproving() {return improving;}
+	public int getNeutral() {return neutral;}
+	public int getWorsening() {return worsening;}
+	
+	/*** Mean mutation rate the generation's offspring were bred with, 0 for the initial generation */
+	public double getMutationRate() {
+		return offspring > 0 ? mutationRateSum / offspring : 0;
+	}
+	
+	/*** Wall clock time the generation took */
+	public long getNanos() {return nanos;}
+	
+	public String toString() {
+		return "Generation " + generation + ": fitness " + getFitness() + "/" + testCases + ", " + getActiveNodes() + " active nodes, "
+				+ offspring + " offspring (" + evaluations + " evaluated, " + improving + " improving, " + neutral + " neutral, "
+				+ worsening + " worsening) at mutation rate " + String.format("%.4f", getMutationRate()) + " in " + nanos / 1000 + "us";
+	}
+}
@@ -0,0 +1,115 @@
+package Base;
+
+/*** Bit-parallel evaluator that reuses the parent's node values when evaluating offspring.
+ * 
+ * Every evaluated individual keeps the packed value column (one bit per test case) of each of its active nodes.
+ * Clones share those columns, and mutation marks the nodes whose genes it changed. An offspring then only
+ * recomputes the columns of changed nodes, nodes that weren't active in the parent and anything downstream
+ * of them, and reuses every other column as is.
+ * 
+ * The columns cost 8 bytes per active node per 64 test cases. The memory budget is shared by the parent and
+ * a generation of offspring; individuals whose columns don't fit their share are evaluated word by word like
+ * the plain BitParallelEvaluator and don't keep any columns, as are all individuals when the test cases are
+ * streamed from a TestCaseSource.
+ * 
+ * Recomputed columns are filled a block of words at a time, all nodes for one block before the next, so a bounded
+ * evaluation still stops once the individual can't reach the threshold. A rejected individual keeps no columns. */
+public class IncrementalEvaluator extends BitParallelEvaluator {
+	
+	private long memoryBudget = 0; // bytes of node columns that may be alive at once
+	private long budgetPerIndividual = 0;
+	private long[] zeroColumn = null; // value of start nodes that have no test input
+	
+	public IncrementalEvaluator(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	public void prepare(CGP cgp) {
+		super.prepare(cgp);
+		this.budgetPerIndividual = memoryBudget / (cgp.getGenerationSize() + 1);
+		this.zeroColumn = new long[numWords];
+	}
+	
+	public int evaluate(Individual individual, int threshold) {
+		int[] genes = individual.genes;
+		int[] schedule = individual.activeSchedule();
+		
+		// Streamed test cases aren't on the heap, so there are no whole input columns to build node columns from
+		if(source != null || (long)schedule.length * numWords * 8 > budgetPerIndividual) {
+			individual.nodeColumns = null;
+			individual.changedNodes = null;
+			return super.evaluate(individual, threshold);
+		}
+		
+		long[][] reference = individual.nodeColumns; // the parent's columns, if it kept them
+		boolean[] changed = individual.changedNodes;
+		long[][] columns = new long[genes.length / Individual.GENES_PER_NODE][];
+		boolean[] recomputed = new boolean[columns.length];
+		
+		for(int row = 0; row < numRows; row++) {
+			columns[row] = row < numInputs ? inputBits[row] : zeroColumn;
+		}
+		
+		for(int address : schedule) {
+			int geneIndex = address * Individual.GENES_PER_NODE;
+			int input0 = genes[geneIndex + Individual.INPUT0_GENE];
+			int input1 = genes[geneIndex + Individual.INPUT1_GENE];
+			
+			boolean reusable = reference != null && reference[address] != null
+					&& (changed == null || !changed[address]) && !recomputed[input0] && !recomputed[input1];
+			if(reusable) {
+				columns[address] = reference[address];
+			}
+			else {
+				columns[address] = new long[numWords];
+				recomputed[address] = true;
+			}
+		}
+		individual.changedNodes = null;
+		
+		int outputBase = columns.length - numRows;
+		long[] outputs = new long[numRows];
+		int passed = 0;
+		for(int fromWord = 0; fromWord < numWords; fromWord += BLOCK_WORDS) {
+			int toWord = Math.min(fromWord + BLOCK_WORDS, numWords);
+			for(int address : schedule) {
+				if(!recomputed[address]) continue;
+				int geneIndex = address * Individual.GENES_PER_NODE;
+				BooleanFunction function = functions[genes[geneIndex + Individual.FUNCTION_GENE]];
+				long[] a = columns[genes[geneIndex + Individual.INPUT0_GENE]];
+				long[] b = columns[genes[geneIndex + Individual.INPUT1_GENE]];
+				long[] column = columns[address];
+				for(int word = fromWord; word < toWord; word++) {
+					column[word] = function.evaluateBits(a[word], b[word]);
+				}
+			}
+			
+			for(int word = fromWord; word < toWord; word++) {
+				for(int row = 0; row < numRows; row++) {
+					outputs[row] = columns[outputBase + row][word];
+				}
+				passed += countPassed(outputs, 0, word);
+			}
+			
+			// Stop once the remaining test cases can't make up for the ones already failed, the columns are incomplete
+			if(passed + remainingTestCases(toWord) < threshold) {
+				individual.nodeColumns = null;
+				return passed;
+			}
+		}
+		
+		individual.nodeColumns = columns;
+		return passed;
+	}
+	
+	/*** Samples are evaluated like the plain BitParallelEvaluator does, node columns only cover the full test set */
+	public int evaluate(Individual individual, int threshold, TestCaseSample sample) {
+		if(sample != null) {
+			individual.nodeColumns = null;
+			individual.changedNodes = null;
+		}
+		return super.evaluate(individual, threshold, sample);
+	}
+	
+	public long getMemoryBudget() {return this.memoryBudget;}
+}
@@ -2,14 +2,39 @@ package Base;
 
 import java.util.HashSet;
 import java.util.Stack;
+import java.util.random.RandomGenerator;
 
 public class Individual {
 	
-	private Node[][] grid = null;
-	private HashSet<Node> inactiveNodes = null; // cached inactive nodes
-	//int[][] decoded = null;
+	// Genes are stored flat, GENES_PER_NODE per node, with nodes addressed as col * numRows + row
+	static final int GENES_PER_NODE = 3;
+	static final int FUNCTION_GENE = 0; // index of the node's function in the CGP's function set
+	static final int INPUT0_GENE = 1; // address of the node wired to input0
+	static final int INPUT1_GENE = 2; // address of the node wired to input1
+	static final int NO_GENE = -1; // start nodes have no function or inputs
+	
+	private static final int STREAM_BLOCK_TEST_CASES = 4096; // test cases read from a TestCaseSource at a time
+	
+	int[] genes = null;
+	private Node[][] grid = null; // built lazily from the genes when nodes are needed (visualizer, toString, etc)
+	
+	// Active set cache, shared with clones until a mutation changes the wiring of an active node.
+	// These arrays are never modified once built
+	private boolean[] activeNodes = null; // per address, true if the node contributes to an output
+	private int[] activeSchedule = null; // addresses of the active non-start nodes in evaluation order
+	private HashSet<Node> inactiveNodes = null; // cached inactive nodes, built from activeNodes on request
+	// Packed value column of every active node (null for the others) and the nodes whose genes changed since they
+	// were computed. Kept by the IncrementalEvaluator and shared with clones, the columns are never modified
+	long[][] nodeColumns = null;
+	boolean[] changedNodes = null;
+	CompiledCircuit compiledCircuit = null; // bytecode compiled phenotype, see BitParallelEvaluator.setCompilationThreshold()
+	long[] samplePassBits = null; // sampled test cases passed by the last evaluation on a TestCaseSample, never modified
+	private boolean activeGenesChanged = false; // set when a mutation changes the phenotype, see activeGenesChanged()
 	private CGP cgp = null;
 	private int fitness = 0;
+	double error = 0; // set by evaluators that measure one, see getError()
+	double mutationRate = 0; // rate the individual was bred with, see getMutationRate()
+	private boolean rejected = false; // see calculateFitness(int)
 	
 	public Individual() {
 	}
@@ -19,88 +44,218 @@ public class Individual {
 		
 		clonedIndividual.cgp = this.cgp;
 		clonedIndividual.fitness = this.fitness;
+		clonedIndividual.error = this.error;
+		clonedIndividual.mutationRate = this.mutationRate;
 		
-		int numCols = cgp.numberOfCols();
-		int numRows = cgp.numberOfRows(); 
-		
-		clonedIndividual.grid = new Node[numCols][numRows];
-		
-		// Clone nodes
-		for(int col = 0; col < numCols; col++) {
-			for(int row = 0; row < numRows; row++) {
-				Node originalNode = grid[col][row];
-				Node clonedNode = originalNode.primClone();			
-				clonedIndividual.grid[col][row] = clonedNode;
-			}
-		}
-		
-		// Now finish the cloning and link the nodes in the same way as the original
-		for(int col = 0; col < numCols; col++) {
-			for(int row = 0; row < numRows; row++) {
-				Node originalNode = grid[col][row];
-				Node clonedNode = clonedIndividual.grid[col][row];			
-				
-				// Link inputs
-				if(!clonedNode.isStartNode) {
-					clonedNode.input0 = clonedIndividual.grid[originalNode.input0.col][originalNode.input0.row];
-					clonedNode.input1 = clonedIndividual.grid[originalNode.input1.col][originalNode.input1.row];
-				}
-			}
+		// The genome is flat, so cloning is a plain array copy. Nodes are rebuilt lazily if the clone ever needs them
+		clonedIndividual.genes = new int[genes.length];
+		System.arraycopy(genes, 0, clonedIndividual.genes, 0, genes.length);
+		clonedIndividual.activeNodes = this.activeNodes;
+		clonedIndividual.activeSchedule = this.activeSchedule;
+		clonedIndividual.compiledCircuit = this.compiledCircuit; // same phenotype until an active gene changes
+		clonedIndividual.samplePassBits = this.samplePassBits; // neutral offspring keep their parent's results
+		clonedIndividual.nodeColumns = this.nodeColumns;
+		if(nodeColumns != null) {
+			clonedIndividual.changedNodes = changedNodes != null ? changedNodes.clone() : new boolean[genes.length / GENES_PER_NODE];
 		}
 		
 		return clonedIndividual;
 	}
 	
 	public void mutate(double mutationRate) {
+		mutate(mutationRate, cgp.random());
+	}
+	
+	/*** Flips a coin for every gene of the non-start nodes and mutates it with probability mutationRate */
+	public void mutate(double mutationRate, RandomGenerator random) {
 		int numCols = cgp.numberOfCols();
 		int numRows = cgp.numberOfRows(); 
+		boolean[] active = activeNodes(); // the active set before any of this mutation's changes
 		
 		for(int col = 1; col < numCols; col++) {
 			for(int row = 0; row < numRows; row++) {
-				Node n = grid[col][row];
+				int geneIndex = (col * numRows + row) * GENES_PER_NODE;
 				
 				// Set the function to use
-				if(Math.random() <= mutationRate) {
-					n.func = cgp.selectRandomFunction();
+				if(random.nextDouble() <= mutationRate) {
+					setGene(geneIndex + FUNCTION_GENE, cgp.selectRandomFunctionIndex(random), active);
 				}
 				
 				// Wire nodes randomly to each other
 				// Start at col 1 because col 0 consists of start nodes				
-				if(Math.random() <= mutationRate) {
+				if(random.nextDouble() <= mutationRate) {
 					// Wire up the inputs to other nodes
-					n.input0 = selectRandomNodeForInput(col);
+					setGene(geneIndex + INPUT0_GENE, selectRandomNodeForInput(col, random), active);
 				}
 				
-				if(Math.random() <= mutationRate) {
-					n.input1 = selectRandomNodeForInput(col);
+				if(random.nextDouble() <= mutationRate) {
+					setGene(geneIndex + INPUT1_GENE, selectRandomNodeForInput(col, random), active);
 				}
 			}
 		}
+		
+		// Any previously built nodes no longer match the genome
+		grid = null;
+		inactiveNodes = null;
 	}
 	
-	public void initWithCGPSettings() {
-		Node.resetIDCounter();
+	/*** 
+	 * Same distribution of mutations as mutate(), but the positions of the mutated genes are drawn directly: the gap
+	 * to the next mutated gene is geometrically distributed, so a mutation costs O(mutated genes) random numbers
+	 * instead of one per gene. Pays off on big genomes with low mutation rates
+	 * */
+	public void mutateGeometric(double mutationRate) {
+		mutateGeometric(mutationRate, cgp.random());
+	}
+	
+	public void mutateGeometric(double mutationRate, RandomGenerator random) {
+		int numRows = cgp.numberOfRows();
+		int firstGene = numRows * GENES_PER_NODE; // genes of the start nodes are never mutated
+		boolean[] active = activeNodes();
 		
-		int numCols = cgp.numberOfCols();
+		if(mutationRate > 0) {
+			double logKeepRate = Math.log1p(-Math.min(1.0, mutationRate)); // -Infinity at a rate of 1, every gene mutates
+			for(int geneIndex = firstGene + geneSkip(random, logKeepRate); geneIndex < genes.length; geneIndex += 1 + geneSkip(random, logKeepRate)) {
+				int col = geneIndex / GENES_PER_NODE / numRows;
+				int value = geneIndex % GENES_PER_NODE == FUNCTION_GENE ? cgp.selectRandomFunctionIndex(random) : selectRandomNodeForInput(col, random);
+				setGene(geneIndex, value, active);
+			}
+		}
+		
+		grid = null;
+		inactiveNodes = null;
+	}
+	
+	/*** Number of genes to leave alone before the next mutated one, with every gene kept with probability e^logKeepRate */
+	private int geneSkip(RandomGenerator random, double logKeepRate) {
+		double skip = Math.floor(Math.log(1.0 - random.nextDouble()) / logKeepRate);
+		return skip < genes.length ? (int)skip : genes.length; // anything past the genome ends the mutation
+	}
+	
+	/*** Mutates random genes until exactly one active gene has changed ("single active" mutation).
+	 * Changes to inactive genes made along the way are kept, so the offspring never shares its parent's phenotype.
+	 * If no active gene can take another value (e.g. a single function and a single legal input per gene) nothing is mutated */
+	public void mutateSingleActive() {
+		mutateSingleActive(cgp.random());
+	}
+	
+	public void mutateSingleActive(RandomGenerator random) {
 		int numRows = cgp.numberOfRows();
+		int firstGene = numRows * GENES_PER_NODE; // genes of the start nodes are never mutated
+		boolean[] active = activeNodes();
+		if(!canChangeActiveGene(active)) {
+			return; // retrying would never end
+		}
 		
-		grid = new Node[cgp.numberOfCols()][numRows];
-		//decoded = new int[numCols][numRows];
+		boolean activeGeneChanged = false;
+		while(!activeGeneChanged) {
+			int geneIndex = firstGene + (int)(random.nextDouble() * (genes.length - firstGene));
+			int col = geneIndex / GENES_PER_NODE / numRows;
+			int value = geneIndex % GENES_PER_NODE == FUNCTION_GENE ? cgp.selectRandomFunctionIndex(random) : selectRandomNodeForInput(col, random);
+			activeGeneChanged = setGene(geneIndex, value, active);
+		}
 		
-		for(int col = 0; col < numCols; col++) {
-			for(int row = 0; row < numRows; row++) {
-				Node node = new Node();
-				node.col = col;
-				node.row = row;
-				grid[col][row] = node;
-				if(col == 0) {
-					node.isStartNode = true;
-				}
+		grid = null;
+		inactiveNodes = null;
+	}
+	
+	/*** Whether some gene of an active node has more than one legal value */
+	private boolean canChangeActiveGene(boolean[] active) {
+		if(cgp.numberOfFunctions() > 1) {
+			return true; // every active node has a function gene
+		}
+		if(cgp.levelsBack() == 0) {
+			return false; // inputs aren't wired
+		}
+		int numRows = cgp.numberOfRows();
+		for(int address = numRows; address < active.length; address++) {
+			// Nodes of the first column after the start nodes can only connect to one of the numRows start nodes
+			if(active[address] && (numRows > 1 || address / numRows > 1)) {
+				return true;
 			}
 		}
+		return false;
+	}
+	
+	/*** Writes a gene, tracking whether the phenotype changed and dropping the active set cache when it may have.
+	 * active is the active set from before the mutation started. Returns true if an active gene was changed */
+	private boolean setGene(int geneIndex, int value, boolean[] active) {
+		if(genes[geneIndex] == value) return false;
+		genes[geneIndex] = value;
+		if(changedNodes != null) {
+			changedNodes[geneIndex / GENES_PER_NODE] = true;
+		}
+		
+		// Genes of inactive nodes don't take part in the phenotype
+		if(!active[geneIndex / GENES_PER_NODE]) return false;
+		
+		activeGenesChanged = true;
+		compiledCircuit = null;
+		// Only rewiring an active node changes the active set, function changes can't
+		if(geneIndex % GENES_PER_NODE != FUNCTION_GENE) {
+			invalidateActiveNodes();
+		}
+		return true;
+	}
+	
+	/*** Returns true if a mutation changed an active gene since this individual was cloned.
+	 * When it's false the individual computes exactly what its parent did, so the inherited fitness still holds */
+	public boolean activeGenesChanged() {
+		return this.activeGenesChanged;
+	}
+	
+	private void invalidateActiveNodes() {
+		activeNodes = null;
+		activeSchedule = null;
+		inactiveNodes = null;
+	}
+	
+	public void initWithCGPSettings() {
+		initWithCGPSettings(cgp.random());
+	}
+	
+	/*** Builds a random genome, drawing from the given generator */
+	public void initWithCGPSettings(RandomGenerator random) {
+		int numCols = cgp.numberOfCols();
+		int numRows = cgp.numberOfRows();
+		
+		genes = new int[numCols * numRows * GENES_PER_NODE];
+		invalidateActiveNodes();
+		compiledCircuit = null;
+		nodeColumns = null;
+		changedNodes = null;
+		
+		// Start nodes have no function and no inputs
+		for(int row = 0; row < numRows; row++) {
+			genes[row * GENES_PER_NODE + FUNCTION_GENE] = NO_GENE;
+			genes[row * GENES_PER_NODE + INPUT0_GENE] = NO_GENE;
+			genes[row * GENES_PER_NODE + INPUT1_GENE] = NO_GENE;
+		}
 		
 		// Initial mutation to set everything
-		mutate(1.00);
+		mutate(1.00, random);
+	}
+	
+	/*** Replaces the genome with a copy of genes (as recorded by an EvolutionHistory) and sets the fitness it was recorded with */
+	void restore(int[] genes, int fitness) {
+		this.genes = genes.clone();
+		this.grid = null;
+		invalidateActiveNodes();
+		compiledCircuit = null;
+		nodeColumns = null;
+		changedNodes = null;
+		samplePassBits = null;
+		this.fitness = fitness;
+		this.error = 0;
+		this.rejected = false;
+	}
+	
+	/*** Sets the result of an evaluation done elsewhere (by a DistributedEvaluator's worker) on the full test set */
+	void evaluated(int fitness, double error, int threshold) {
+		this.samplePassBits = null;
+		this.fitness = fitness;
+		this.error = error;
+		this.rejected = fitness < threshold;
 	}
 	
 	public void setCGPSettings(CGP cgp) {
@@ -111,20 +266,122 @@ public class Individual {
 	
 	/*** Resets all current node values */
 	public void resetNodes() { // TODO: implement
-		for(Node[] col : this.grid) {
+		for(Node[] col : getGrid()) {
 			for(Node node : col) {
 				node.setValue(null);
 			}
 		}
 	}
 	
-	public Node[][] getGrid() {return this.grid;}
+	/*** Returns the node representation of this individual, building it from the genes if needed */
+	public Node[][] getGrid() {
+		if(grid == null) {
+			grid = buildGrid();
+		}
+		return this.grid;
+	}
+	
+	private Node[][] buildGrid() {
+		int numCols = cgp.numberOfCols();
+		int numRows = cgp.numberOfRows();
+		
+		Node[][] nodes = new Node[numCols][numRows];
+		for(int col = 0; col < numCols; col++) {
+			for(int row = 0; row < numRows; row++) {
+				Node node = new Node(col * numRows + row); // ids match the node addresses
+				node.col = col;
+				node.row = row;
+				node.isStartNode = col == 0;
+				nodes[col][row] = node;
+			}
+		}
+		
+		// Now link the nodes the way the genes describe
+		for(int col = 1; col < numCols; col++) {
+			for(int row = 0; row < numRows; row++) {
+				Node node = nodes[col][row];
+				int geneIndex = (col * numRows + row) * GENES_PER_NODE;
+				node.func = cgp.getFunction(genes[geneIndex + FUNCTION_GENE]);
+				node.input0 = nodeAt(nodes, genes[geneIndex + INPUT0_GENE], numRows);
+				node.input1 = nodeAt(nodes, genes[geneIndex + INPUT1_GENE], numRows);
+			}
+		}
+		return nodes;
+	}
+	
+	private static Node nodeAt(Node[][] nodes, int address, int numRows) {
+		if(address == NO_GENE) return null;
+		return nodes[address / numRows][address % numRows];
+	}
 	
 	// Run through the fitness cases and see how well this individual performs
 	public int calculateFitness() {
+		return calculateFitness(0);
+	}
+	
+	/*** 
+	 * Bounded fitness calculation: stops as soon as the remaining test cases can't bring the fitness up to threshold.
+	 * The individual is then marked as rejected and its cached fitness is only the partial count reached so far.
+	 * While the CGP samples test cases only the current sample is evaluated
+	 * */
+	public int calculateFitness(int threshold) {
+		return calculateFitness(threshold, cgp.getTestCaseSample());
+	}
+	
+	/*** 
+	 * Bounded fitness calculation on the given sample of the test cases, or on all of them if sample is null.
+	 * Sampled evaluations record the sampled test cases that passed, see getSamplePassBits()
+	 * */
+	public int calculateFitness(int threshold, TestCaseSample sample) {
+		
+		this.samplePassBits = null;
+		this.error = 0;
+		
+		// Fitness on a sample isn't comparable with the phenotype's cached fitness on the full test set,
+		// and the cache only holds fitness values, not the errors a RegressionEvaluator measures
+		FitnessEvaluator evaluator = cgp.getFitnessEvaluator();
+		FitnessCache cache = sample == null && !(evaluator instanceof RegressionEvaluator) ? cgp.getFitnessCache() : null;
+		FitnessCache.PhenotypeKey key = null;
+		if(cache != null) {
+			key = FitnessCache.keyOf(this);
+			Integer cachedFitness = cache.get(key);
+			if(cachedFitness != null) {
+				this.fitness = cachedFitness;
+				this.rejected = this.fitness < threshold;
+				return this.fitness;
+			}
+		}
+		
+		PrimitiveTestCases primitiveTestCases = cgp.getPrimitiveTestCases();
+		if(evaluator != null) {
+			this.fitness = sample == null ? evaluator.evaluate(this, threshold) : evaluator.evaluate(this, threshold, sample);
+		}
+		else if(cgp.getTestCaseSource() != null) {
+			this.fitness = calculateStreamedFitness(cgp.getTestCaseSource(), threshold, sample);
+		}
+		else if(primitiveTestCases != null) {
+			this.fitness = calculatePrimitiveFitness(primitiveTestCases, threshold, sample);
+		}
+		else {
+			this.fitness = calculateGenericFitness(threshold, sample);
+		}
+		
+		this.rejected = this.fitness < threshold;
+		
+		// Only complete evaluations are cached, a rejected individual's fitness is just a partial count
+		if(cache != null && !rejected) {
+			cache.put(key, this.fitness);
+		}
+		return this.fitness;
+	}
+	
+	/*** Evaluates the test cases as Objects through Function.execute() */
+	private int calculateGenericFitness(int threshold, TestCaseSample sample) {
 		
 		resetNodes();
 		
+		Node[][] grid = getGrid();
+		
 		Object[][] testCaseInputs = cgp.getTestCaseInputs();
 		Object[][] testCaseOutputs = cgp.getTestCaseOutputs();
 		
@@ -133,10 +390,16 @@ public class Individual {
 		
 		int fitness = 0;
 		
-		int numTestCases = testCaseInputs.length / cgp.numberOfRows();
+		int testCasesToEvaluate = sample != null ? sample.getNumTestCases() : testCaseInputs.length;
+		long[] passBits = sample != null ? new long[sample.numberOfWords()] : null;
+		this.samplePassBits = passBits;
+		
+		// The graph doesn't change during the evaluation so the active nodes only need to be looked up once
+		Node[] nodesToProcess = activeNodesToProcess();
 		
-		int tIndex = 0; // testCase index
-		for(Object[] testCase : testCaseInputs) {
+		for(int i = 0; i < testCasesToEvaluate; i++) {
+			int tIndex = sample != null ? sample.testCase(i) : i; // testCase index
+			Object[] testCase = testCaseInputs[tIndex];
 		
 			// Set start input values in input nodes
 			int row = 0;
@@ -145,10 +408,7 @@ public class Individual {
 				//System.out.println("Setting " + inputValue + " in row " + row);
 			}
 			
-			Stack<Node> nodes = getNodesToProcess();
-			Node node = null;
-			while(nodes.size() > 0) {
-				node = nodes.pop();
+			for(Node node : nodesToProcess) {
 				node.evaluate(true);
 			}
 			
@@ -167,67 +427,318 @@ public class Individual {
 			}
 			
 			fitness += testPassed ? 1 : 0;				
+			if(testPassed && passBits != null) {
+				passBits[i >>> 6] |= 1L << (i & 63);
+			}
 			
-			tIndex++;
 			// just perform 1 test case for now for testing purposes
 			//break;
 			
+			// Stop once the remaining test cases can't make up for the ones already failed
+			if(fitness + (testCasesToEvaluate - i - 1) < threshold) {
+				break;
+			}
 		}
 		
-		this.fitness = fitness;
+		return fitness;
+	}
+	
+	/*** Same as the generic evaluation but on unboxed values, so no allocation happens per test case */
+	private int calculatePrimitiveFitness(PrimitiveTestCases testCases, int threshold, TestCaseSample sample) {
+		Node[][] grid = getGrid();
+		Node[] nodesToProcess = activeNodesToProcess();
+		boolean[] outputsToIgnore = cgp.getOutputsToIgnore();
+		int numRows = cgp.numberOfRows();
+		int lastCol = cgp.numberOfCols() - 1;
+		Function.ValueType valueType = testCases.getValueType();
+		boolean isDouble = valueType == Function.ValueType.DOUBLE;
 		
-		return this.fitness;
+		long[][] longInputs = testCases.getLongInputs();
+		long[][] longOutputs = testCases.getLongOutputs();
+		double[][] doubleInputs = testCases.getDoubleInputs();
+		double[][] doubleOutputs = testCases.getDoubleOutputs();
+		int testCasesToEvaluate = sample != null ? sample.getNumTestCases() : isDouble ? doubleInputs.length : longInputs.length;
+		long[] passBits = sample != null ? new long[sample.numberOfWords()] : null;
+		this.samplePassBits = passBits;
+		
+		int fitness = 0;
+		for(int i = 0; i < testCasesToEvaluate; i++) {
+			int tIndex = sample != null ? sample.testCase(i) : i;
+			
+			// Set start input values in input nodes
+			if(isDouble) {
+				for(int row = 0; row < doubleInputs[tIndex].length; row++) {
+					grid[0][row].setDoubleValue(doubleInputs[tIndex][row]);
+				}
+			}
+			else if(valueType == Function.ValueType.BOOLEAN) {
+				for(int row = 0; row < longInputs[tIndex].length; row++) {
+					grid[0][row].setBooleanValue(longInputs[tIndex][row] != 0);
+				}
+			}
+			else {
+				for(int row = 0; row < longInputs[tIndex].length; row++) {
+					grid[0][row].setLongValue(longInputs[tIndex][row]);
+				}
+			}
+			
+			for(Node node : nodesToProcess) {
+				node.evaluate(true);
+			}
+			
+			// Doubles are compared the way Double.equals() does
+			boolean testPassed = true;
+			for(int row = 0; row < numRows && testPassed; row++) {
+				if(outputsToIgnore[row]) continue;
+				Node output = grid[lastCol][row];
+				if(isDouble) {
+					testPassed = Double.doubleToLongBits(output.doubleValue()) == Double.doubleToLongBits(doubleOutputs[tIndex][row]);
+				}
+				else {
+					testPassed = output.longValue() == longOutputs[tIndex][row];
+				}
+			}
+			
+			fitness += testPassed ? 1 : 0;
+			if(testPassed && passBits != null) {
+				passBits[i >>> 6] |= 1L << (i & 63);
+			}
+			
+			if(fitness + (testCasesToEvaluate - i - 1) < threshold) {
+				break;
+			}
+		}
+		return fitness;
 	}
 	
-	private Node selectRandomNodeForInput(int currentCol) {
+	/*** Same as the primitive evaluation, but the test cases are read from a column oriented source a block at a time,
+	 * so they never have to be on the heap as a whole */
+	private int calculateStreamedFitness(TestCaseSource source, int threshold, TestCaseSample sample) {
+		Node[][] grid = getGrid();
+		Node[] nodesToProcess = activeNodesToProcess();
+		boolean[] outputsToIgnore = cgp.getOutputsToIgnore();
+		int lastCol = cgp.numberOfCols() - 1;
+		int numInputs = source.getNumInputs();
+		int numOutputs = source.getNumOutputs();
+		int totalTestCases = source.getNumTestCases();
+		Function.ValueType valueType = source.getValueType();
+		boolean isBoolean = valueType == Function.ValueType.BOOLEAN;
+		boolean isDouble = valueType == Function.ValueType.DOUBLE;
+		
+		// One block of every input and (non ignored) output column. Boolean columns stay bit-packed
+		int numColumns = numInputs + numOutputs;
+		int blockLength = isBoolean ? STREAM_BLOCK_TEST_CASES / 64 : STREAM_BLOCK_TEST_CASES;
+		long[][] longBlock = isDouble ? null : new long[numColumns][blockLength];
+		double[][] doubleBlock = isDouble ? new double[numColumns][blockLength] : null;
+		
+		int[] sampledWords = sample != null ? sample.getWords() : null;
+		int wordsToEvaluate = sample != null ? sampledWords.length : source.getNumWords();
+		int testCasesToEvaluate = sample != null ? sample.getNumTestCases() : totalTestCases;
+		long[] passBits = sample != null ? new long[wordsToEvaluate] : null;
+		this.samplePassBits = passBits;
+		
+		int fitness = 0;
+		
+		// Runs of consecutive words of test cases are read as one block
+		for(int w = 0; w < wordsToEvaluate; ) {
+			int fromWord = sample != null ? sampledWords[w] : w;
+			int runWords = 1;
+			while(runWords < STREAM_BLOCK_TEST_CASES / 64 && w + runWords < wordsToEvaluate
+					&& (sample == null || sampledWords[w + runWords] == fromWord + runWords)) {
+				runWords++;
+			}
+			int blockStart = fromWord * 64;
+			int blockSize = Math.min(runWords * 64, totalTestCases - blockStart);
+			int sampleStart = w * 64; // index of the block's first test case among the evaluated ones
+			w += runWords;
+			
+			for(int column = 0; column < numColumns; column++) {
+				if(column >= numInputs && outputsToIgnore[column - numInputs]) continue;
+				if(isBoolean) {
+					source.readBits(column, fromWord, longBlock[column], runWords);
+				}
+				else if(isDouble) {
+					source.readDoubles(column, blockStart, doubleBlock[column], blockSize);
+				}
+				else {
+					source.readLongs(column, blockStart, longBlock[column], blockSize);
+				}
+			}
+			
+			for(int i = 0; i < blockSize; i++) {
+				
+				// Set start input values in input nodes
+				for(int row = 0; row < numInputs; row++) {
+					if(isBoolean) {
+						grid[0][row].setBooleanValue((longBlock[row][i >>> 6] & (1L << (i & 63))) != 0);
+					}
+					else if(isDouble) {
+						grid[0][row].setDoubleValue(doubleBlock[row][i]);
+					}
+					else {
+						grid[0][row].setLongValue(longBlock[row][i]);
+					}
+				}
+				
+				for(Node node : nodesToProcess) {
+					node.evaluate(true);
+				}
+				
+				boolean testPassed = true;
+				for(int row = 0; row < numOutputs && testPassed; row++) {
+					if(outputsToIgnore[row]) continue;
+					Node output = grid[lastCol][row];
+					int column = numInputs + row;
+					if(isBoolean) {
+						testPassed = output.booleanValue() == ((longBlock[column][i >>> 6] & (1L << (i & 63))) != 0);
+					}
+					else if(isDouble) {
+						testPassed = Double.doubleToLongBits(output.doubleValue()) == Double.doubleToLongBits(doubleBlock[column][i]);
+					}
+					else {
+						testPassed = output.longValue() == longBlock[column][i];
+					}
+				}
+				
+				fitness += testPassed ? 1 : 0;
+				if(testPassed && passBits != null) {
+					passBits[(sampleStart + i) >>> 6] |= 1L << (i & 63);
+				}
+				
+				if(fitness + (testCasesToEvaluate - sampleStart - i - 1) < threshold) {
+					return fitness;
+				}
+			}
+		}
+		return fitness;
+	}
+	
+	/*** Returns the active nodes in evaluation order */
+	private Node[] activeNodesToProcess() {
+		Node[][] grid = getGrid();
+		int numRows = cgp.numberOfRows();
+		int[] schedule = activeSchedule();
+		Node[] nodesToProcess = new Node[schedule.length];
+		for(int i = 0; i < schedule.length; i++) {
+			nodesToProcess[i] = grid[schedule[i] / numRows][schedule[i] % numRows];
+		}
+		return nodesToProcess;
+	}
+	
+	/*** Returns the address of a random node that a node in currentCol may take as input */
+	private int selectRandomNodeForInput(int currentCol, RandomGenerator random) {
 		int levelsBack = cgp.levelsBack();
 		int numRows = cgp.numberOfRows();
 		
 		if(levelsBack > 0) {
-			int rndRow = (int) (Math.random() * numRows);
+			int rndRow = (int) (random.nextDouble() * numRows);
 			// Roll dice, if random number greater than 0.5 then node will be in initial input column,
 			// OR if the current column is the 2nd one then we don't have a choice anyway
-			if(Math.random() > 0.5 || currentCol == 1) {
-				return grid[0][rndRow];
+			if(random.nextDouble() > 0.5 || currentCol == 1) {
+				return rndRow;
 			}
-			int rndCol = Math.max(1, Math.min(currentCol-1,(int)(currentCol-Math.random()*levelsBack)));
-			return grid[rndCol][rndRow];
+			int rndCol = Math.max(1, Math.min(currentCol-1,(int)(currentCol-random.nextDouble()*levelsBack)));
+			return rndCol * numRows + rndRow;
 		}
-		return null;
+		return NO_GENE;
+	}
+	
+	/*** Returns the addresses of the active non-start nodes in evaluation order.
+	 * Cached until a mutation rewires an active node */
+	int[] activeSchedule() {
+		if(activeSchedule == null) {
+			findActiveNodes();
+		}
+		return activeSchedule;
+	}
+	
+	/*** Number of nodes that contribute to an output, the size of the phenotype */
+	public int numberOfActiveNodes() {
+		return activeSchedule().length;
 	}
 	
-	// Returns nodes that should be processed
+	/*** Returns true if the node at the given address contributes to an output */
+	public boolean isActive(int address) {
+		return activeNodes()[address];
+	}
+	
+	/*** Index in the CGP's function set of the function of the node at the given address, -1 for start nodes */
+	public int getFunctionGene(int address) {
+		return genes[address * GENES_PER_NODE + FUNCTION_GENE];
+	}
+	
+	/*** Address of the node wired to input 0 or 1 of the node at the given address, -1 for start nodes */
+	public int getInputGene(int address, int input) {
+		return genes[address * GENES_PER_NODE + (input == 0 ? INPUT0_GENE : INPUT1_GENE)];
+	}
+	
+	private boolean[] activeNodes() {
+		if(activeNodes == null) {
+			findActiveNodes();
+		}
+		return activeNodes;
+	}
+	
+	/*** Works out the active nodes from the genes, walking back from the output column */
+	private void findActiveNodes() {
+		int numCols = cgp.numberOfCols();
+		int numRows = cgp.numberOfRows();
+		int numNodes = numCols * numRows;
+		
+		boolean[] active = new boolean[numNodes];
+		int activeCount = 0;
+		int outputBase = (numCols - 1) * numRows;
+		for(int address = numNodes - 1; address >= numRows; address--) {
+			if(address >= outputBase || active[address]) {
+				active[address] = true;
+				activeCount++;
+				int geneIndex = address * GENES_PER_NODE;
+				markActive(active, genes[geneIndex + INPUT0_GENE]);
+				markActive(active, genes[geneIndex + INPUT1_GENE]);
+			}
+		}
+		
+		int[] schedule = new int[activeCount];
+		int i = 0;
+		for(int address = numRows; address < numNodes; address++) {
+			if(active[address]) {
+				schedule[i++] = address;
+			}
+		}
+		
+		this.activeNodes = active;
+		this.activeSchedule = schedule;
+		this.inactiveNodes = null;
+	}
+	
+	private static void markActive(boolean[] active, int address) {
+		if(address != NO_GENE) {
+			active[address] = true;
+		}
+	}
+	
+	/*** Returns nodes that should be processed, the next one to evaluate on top.
+	 * Built from the cached active set */
 	public Stack<Node> getNodesToProcess() {		
 		Stack<Node> nodesToProcess = new Stack<Node>();
-		HashSet<Node> refedNodes = new HashSet<Node>();
-		HashSet<Node> inactive = new HashSet<Node>();
 		
+		Node[][] grid = getGrid();
 		int numCols = cgp.numberOfCols();
 		int numRows = cgp.numberOfRows();
 		
-		int outputCol = numCols - 1;
 		for(int col = numCols-1; col >= 0; col--) {
 			for(int row = 0; row < numRows; row++) {
-				Node node = grid[col][row];
-				if(col == outputCol || refedNodes.contains(node)) {
-					//refedNodes.add(node);
-					nodesToProcess.push(node);
-					refedNodes.add(node.input0);
-					refedNodes.add(node.input1);
-				}
-				else {
-					//System.out.println("Node " + node.id + " is inactive and won't be processed.");
-					inactive.add(node);
+				if(isActive(col * numRows + row)) {
+					nodesToProcess.push(grid[col][row]);
 				}
 			}
 		}
-		this.inactiveNodes = inactive;
-		//System.out.println("The following nodes will be processed in the following order: " + nodesToProcess);
 		return nodesToProcess;
 	}
-			
+	
 	public HashSet<Node> analyzePathsToStartInputs() {
 		HashSet<Node> nodesToInputs = new HashSet<Node>();
+		Node[][] grid = getGrid();
 		
 		int lastCol = cgp.numberOfCols()-1;
 		for(int row = 0; row < cgp.numberOfRows(); row++) {
@@ -240,6 +751,19 @@ public class Individual {
 	}
 	
 	public HashSet<Node> getInactiveNodes() {
+		if(inactiveNodes == null) {
+			HashSet<Node> inactive = new HashSet<Node>();
+			Node[][] grid = getGrid();
+			int numRows = cgp.numberOfRows();
+			for(int col = 0; col < grid.length; col++) {
+				for(int row = 0; row < numRows; row++) {
+					if(!isActive(col * numRows + row)) {
+						inactive.add(grid[col][row]);
+					}
+				}
+			}
+			this.inactiveNodes = inactive;
+		}
 		return this.inactiveNodes;
 	}
 	
@@ -247,7 +771,42 @@ public class Individual {
 		return this.fitness;
 	}
 	
+	/*** 
+	 * Error of the last evaluation (e.g. the mean squared error measured by a RegressionEvaluator), lower is better.
+	 * 0 for evaluations that only count passed test cases
+	 * */
+	public double getError() {
+		return this.error;
+	}
+	
+	/*** Mutation rate the individual was bred with (see MutationRateController), 0 for the initial random individuals */
+	public double getMutationRate() {
+		return this.mutationRate;
+	}
+	
+	/*** True if this individual passes more test cases than other, or as many with a lower error */
+	public boolean isFitterThan(Individual other) {
+		return fitness > other.fitness || (fitness == other.fitness && error < other.error);
+	}
+	
+	/*** True if this individual passes more test cases than other, or as many with no higher error */
+	public boolean isAtLeastAsFitAs(Individual other) {
+		return fitness > other.fitness || (fitness == other.fitness && error <= other.error);
+	}
+	
+	/*** 
+	 * Bitset of the sampled test cases the last evaluation on a TestCaseSample passed (sampled test case i is bit
+	 * i % 64 of word i / 64), or null if the individual was last evaluated on the full test set
+	 * */
+	public long[] getSamplePassBits() {return samplePassBits;}
+	
+	/*** True if the last fitness calculation was cut short because it couldn't reach its threshold */
+	public boolean isRejected() {
+		return this.rejected;
+	}
+	
 	public String toString() {
+		Node[][] grid = getGrid();
 		String info = "";
 		for(int row = 0; row < cgp.numberOfRows(); row++) {
 			String rowInfo = "";
@@ -0,0 +1,193 @@
+package Base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/*** Runs several independent (1+lambda) lineages ("islands") of a CGP on their own threads.
+ * Every migrationInterval generations each island publishes a copy of its fittest individual and adopts
+ * the best published individual of its neighbours if that one is strictly fitter.
+ * 
+ * Migration goes through a lock-free mailbox per island that only ever holds the latest emigrant, so a slow
+ * island never holds up a fast one. The run ends as soon as any island finds a solution.
+ * In a seeded run (CGP.setSeed()) every island gets its own generator, but as migration depends on thread timing
+ * the run as a whole isn't reproducible.
+ * Each island breeds with its own MutationRateController from setMutationRateControllers(), a FixedRate of 0.20 by
+ * default, which gets that island's feedback only. The CGP's own controller isn't used, a stateful one can't be
+ * shared between islands. */
+public class IslandModel {
+	
+	public static enum Topology {
+		RING, // each island receives from the previous island only
+		FULLY_CONNECTED // each island receives from every other island
+	}
+	
+	private CGP cgp = null;
+	private int numIslands = 0;
+	private int migrationInterval = 0;
+	private Topology topology = Topology.RING;
+	private Supplier<MutationRateController> mutationRates = () -> new FixedRate(0.20);
+	private int maxGenerations = 0; // per island, 0 means no limit
+	
+	private AtomicReferenceArray<Individual> emigrants = null; // latest individual published by each island
+	private AtomicBoolean solved = null;
+	private AtomicReference<Individual> fittest = null;
+	private int generationsTaken = 0; // by the island that found the returned individual
+	
+	/*** numIslands islands that migrate every migrationInterval generations, both at least 1 */
+	public IslandModel(CGP cgp, int numIslands, int migrationInterval, Topology topology) {
+		if(numIslands < 1) {
+			throw new IllegalArgumentException("An island model needs at least 1 island, not " + numIslands);
+		}
+		if(migrationInterval < 1) {
+			throw new IllegalArgumentException("The migration interval must be at least 1 generation, not " + migrationInterval);
+		}
+		if(cgp == null || topology == null) {
+			throw new IllegalArgumentException("An island model needs a CGP and a topology");
+		}
+		this.cgp = cgp;
+		this.numIslands = numIslands;
+		this.migrationInterval = migrationInterval;
+		this.topology = topology;
+	}
+	
+	/*** Breeds every island with a FixedRate of mutationRate */
+	public void setMutationRate(double mutationRate) {
+		setMutationRateControllers(() -> new FixedRate(mutationRate));
+	}
+	
+	/*** Breeds each island with its own controller from mutationRates, e.g. () -> new OneFifthSuccessRule(0.05, 1.2).
+	 * evolve() asks for one controller per island and prepares it, so each island adapts its rate to its
+	 * own lineage */
+	public void setMutationRateControllers(Supplier<MutationRateController> mutationRates) {
+		if(mutationRates == null) {
+			throw new IllegalArgumentException("Islands need a mutation rate controller supplier");
+		}
+		this.mutationRates = mutationRates;
+	}
+	
+	/*** Stops every island after this many generations, even if no solution was found. 0 means no limit */
+	public void setMaxGenerations(int maxGenerations) {
+		this.maxGenerations = maxGenerations;
+	}
+	
+	/*** Evolves all islands until one of them is solved (or maxGenerations is hit) and returns the fittest individual found */
+	public Individual evolve() {
+		if(cgp.getSamplingStrategy() != null) {
+			throw new IllegalStateException("Islands evaluate every test case, the CGP's sampling strategy can't be shared between them");
+		}
+		emigrants = new AtomicReferenceArray<Individual>(numIslands);
+		solved = new AtomicBoolean(false);
+		fittest = new AtomicReference<Individual>();
+		
+		List<Callable<Void>> islands = new ArrayList<Callable<Void>>(numIslands);
+		for(int i = 0; i < numIslands; i++) {
+			final int island = i;
+			final RandomGenerator random = cgp.splitRandom(); // seeded runs give each island its own generator
+			final MutationRateController rates = mutationRates.get();
+			if(rates == null) {
+				throw new IllegalStateException("The mutation rate controller supplier returned null");
+			}
+			rates.prepare(cgp);
+			islands.add(new Callable<Void>() {
+				public Void call() {
+					evolveIsland(island, rates, CGP.threadRandom(random));
+					return null;
+				}
+			});
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numIslands);
+		try {
+			for(Future<Void> result : executor.invokeAll(islands)) {
+				result.get();
+			}
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while evolving islands", ie);
+		} catch(ExecutionException ee) {
+			if(ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)ee.getCause();
+			}
+			throw new IllegalStateException("Island evolution failed", ee.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		return fittest.get();
+	}
+	
+	private void evolveIsland(int island, MutationRateController rates, RandomGenerator random) {
+		int desiredFitness = cgp.getTotalTestCases();
+		Individual parent = cgp.randomFittestIndividual(random);
+		int generation = 1;
+		
+		while(parent.getCachedFitness() < desiredFitness && !solved.get()
+				&& (maxGenerations == 0 || generation < maxGenerations)) {
+			
+			parent = cgp.evolveIslandGeneration(parent, generation, rates, random);
+			generation++;
+			
+			if(generation % migrationInterval == 0) {
+				parent = migrate(island, parent);
+			}
+		}
+		
+		offerResult(parent, generation);
+	}
+	
+	/*** Publishes the island's parent and returns the individual the island should continue with */
+	private Individual migrate(int island, Individual parent) {
+		// Publish a copy, the parent itself keeps filling its lazy caches on this thread
+		emigrants.set(island, parent.clone());
+		
+		Individual best = parent;
+		if(topology == Topology.RING) {
+			best = fitterOf(best, emigrants.get((island + numIslands - 1) % numIslands));
+		}
+		else {
+			for(int other = 0; other < numIslands; other++) {
+				if(other != island) {
+					best = fitterOf(best, emigrants.get(other));
+				}
+			}
+		}
+		return best;
+	}
+	
+	private static Individual fitterOf(Individual current, Individual immigrant) {
+		if(immigrant != null && immigrant.isFitterThan(current)) {
+			return immigrant.clone(); // other islands may adopt the same emigrant
+		}
+		return current;
+	}
+	
+	private void offerResult(Individual individual, int generation) {
+		synchronized(fittest) {
+			Individual current = fittest.get();
+			if(current == null || individual.isFitterThan(current)) {
+				fittest.set(individual);
+				generationsTaken = generation;
+			}
+			if(individual.getCachedFitness() >= cgp.getTotalTestCases()) {
+				solved.set(true);
+			}
+		}
+	}
+	
+	/*** Generations taken by the island that produced the individual returned by the last evolve() */
+	public int getGenerationsTaken() {return this.generationsTaken;}
+	
+	public int numberOfIslands() {return this.numIslands;}
+	public int migrationInterval() {return this.migrationInterval;}
+	public Topology getTopology() {return this.topology;}
+}
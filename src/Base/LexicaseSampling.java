@@ -0,0 +1,30 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Down-sampled lexicase selection: every generation is evaluated on a fresh random subset of the test cases and
+ * the next parent is picked by lexicase selection on it. Lexicase selection walks the sampled test cases in random
+ * order, each time keeping only the candidates that pass it, until a single one is left.
+ *
+ * The candidates are the parent and the offspring that pass at least as many sampled test cases. Among those,
+ * lexicase selection favours the ones that solve test cases few others solve, instead of picking the last one. */
+public class LexicaseSampling extends SamplingStrategy {
+
+	private double sampleRate = 0;
+
+	/*** Samples the given fraction of the test cases (between 0 and 1) per generation */
+	public LexicaseSampling(double sampleRate) {
+		if(sampleRate <= 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("Sample rate must be in (0, 1]: " + sampleRate);
+		}
+		this.sampleRate = sampleRate;
+	}
+
+	public TestCaseSample nextSample(int generation, Individual parent, RandomGenerator random) {
+		return sampleOf(shuffledWords(random), 0, wordsFor((int)Math.ceil(sampleRate * totalTestCases)));
+	}
+
+	public boolean isLexicase() {return true;}
+
+	public double getSampleRate() {return this.sampleRate;}
+}
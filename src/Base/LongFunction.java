@@ -0,0 +1,20 @@
+package Base;
+
+/*** A function on integer values that can be evaluated without boxing.
+ * Works for int problems too, values are simply held as longs */
+public abstract class LongFunction extends Function<Long> {
+
+	public LongFunction(String name) {
+		super(name);
+	}
+	
+	public abstract long evaluateLong(long a, long b);
+	
+	public Long execute(Node a, Node b) {
+		return evaluateLong(((Number)a.value()).longValue(), ((Number)b.value()).longValue());
+	}
+	
+	public ValueType getValueType() {
+		return ValueType.LONG;
+	}
+}
@@ -0,0 +1,37 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Evaluates each generation on a different mini-batch of the test cases. The batches are drawn from a random
+ * order of the test set's words without replacement, so every test case is seen once every
+ * totalTestCases / batchSize generations, after which the order is reshuffled */
+public class MiniBatchSampling extends SamplingStrategy {
+
+	private int batchSize = 0;
+	private int[] order = null;
+	private int next = 0; // first word of order that hasn't been in a batch this epoch
+
+	/*** batchSize test cases per generation, rounded up to whole 64 test case words */
+	public MiniBatchSampling(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void prepare(CGP cgp) {
+		super.prepare(cgp);
+		this.order = null; // shuffled when the first batch is drawn
+		this.next = 0;
+	}
+
+	public TestCaseSample nextSample(int generation, Individual parent, RandomGenerator random) {
+		int batchWords = wordsFor(batchSize);
+		if(order == null || next + batchWords > numWords) {
+			order = shuffledWords(random);
+			next = 0;
+		}
+		TestCaseSample batch = sampleOf(order, next, batchWords);
+		next += batchWords;
+		return batch;
+	}
+
+	public int getBatchSize() {return this.batchSize;}
+}
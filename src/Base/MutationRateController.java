@@ -0,0 +1,38 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Chooses the mutation rate offspring are bred with, see CGP.setMutationRateController(). The rate is recorded on
+ * each offspring (Individual.getMutationRate()) and the mean rate of a generation is reported in its GenerationStats.
+ *
+ * offspringRate() is called for every offspring, on the evaluation threads when the CGP evaluates in parallel, so it
+ * may only read the controller's state. The feedback methods are called on the evolving thread, in between.
+ * An IslandModel gives each island its own controller, see IslandModel.setMutationRateControllers().
+ * The SINGLE_ACTIVE mutation operator doesn't use a rate. */
+public abstract class MutationRateController {
+
+	double minRate = 0; // one gene per offspring on average, set by prepare()
+
+	/*** Called when testEvolve() starts, so that each run starts afresh */
+	public void prepare(CGP cgp) {
+		int genes = (cgp.numberOfCols() - 1) * cgp.numberOfRows() * Individual.GENES_PER_NODE;
+		this.minRate = genes > 0 ? 1.0 / genes : 0;
+	}
+
+	/*** The rate the next offspring of parent is mutated with. Draw any random numbers from random so that seeded runs
+	 * are reproducible */
+	public abstract double offspringRate(Individual parent, RandomGenerator random);
+
+	/*** Called for every evaluated offspring of a generation, parent being the individual it was bred from */
+	public void offspringEvaluated(Individual offspring, Individual parent) {
+	}
+
+	/*** Called at the end of every generation bred with this controller */
+	public void generationCompleted(GenerationStats stats) {
+	}
+
+	/*** Keeps a rate between mutating one gene per offspring on average and mutating every gene */
+	double clamp(double rate) {
+		return Math.max(minRate, Math.min(1.0, rate));
+	}
+}
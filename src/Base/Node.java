@@ -1,15 +1,21 @@
 package Base;
 
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Node {
 	
-	private static int ID_COUNTER = 0;
+	private static final AtomicInteger ID_COUNTER = new AtomicInteger(); // shared by all threads
 	public int id = 0;
 	boolean isStartNode = false;
 	Node input0;
 	Node input1;
 	private Object value;
+	// Unboxed value storage used by primitive-specialized functions, see Function.ValueType.
+	// Booleans are stored as all ones (true) or all zeros (false) so BooleanFunction.evaluateBits() can work on them directly
+	private Function.ValueType valueType = Function.ValueType.OBJECT;
+	private long longValue = 0;
+	private double doubleValue = 0;
 	Function func = null; // index of function to use
 	
 	// These vars used mainly when debugging and cloning
@@ -17,7 +23,7 @@ public class Node {
 	protected int row = 0;
 	
 	public Node() {
-		this.id = ID_COUNTER++;
+		this.id = ID_COUNTER.getAndIncrement();
 	}
 	
 	public Node(int id) {
@@ -30,23 +36,78 @@ public class Node {
 		Node clone = new Node(id);		
 		clone.isStartNode = this.isStartNode;
 		clone.value = this.value;
+		clone.valueType = this.valueType;
+		clone.longValue = this.longValue;
+		clone.doubleValue = this.doubleValue;
 		clone.func = this.func;
 		clone.col = this.col;
 		clone.row = this.row;		
 		return clone;
 	}
 	
+	/*** Returns the node's value, boxing it if it's held as a primitive */
 	public Object value() {
-		return this.value;
+		switch(valueType) {
+			case BOOLEAN: return Boolean.valueOf(longValue != 0);
+			case LONG: return Long.valueOf(longValue);
+			case DOUBLE: return Double.valueOf(doubleValue);
+			default: return this.value;
+		}
 	}
 	
 	public void setValue(Object value) {
 		this.value = value;
+		this.valueType = Function.ValueType.OBJECT;
+		
+		// Keep the primitive views in sync so primitive functions can read values set from boxed test cases
+		if(value instanceof Boolean) {
+			this.longValue = (Boolean)value ? -1L : 0L;
+		}
+		else if(value instanceof Number) {
+			this.longValue = ((Number)value).longValue();
+			this.doubleValue = ((Number)value).doubleValue();
+		}
+	}
+	
+	public boolean booleanValue() {return longValue != 0;}
+	public long longValue() {return longValue;}
+	public double doubleValue() {return doubleValue;}
+	
+	public void setBooleanValue(boolean value) {
+		this.longValue = value ? -1L : 0L;
+		this.valueType = Function.ValueType.BOOLEAN;
 	}
 	
+	public void setLongValue(long value) {
+		this.longValue = value;
+		this.valueType = Function.ValueType.LONG;
+	}
+	
+	public void setDoubleValue(double value) {
+		this.doubleValue = value;
+		this.valueType = Function.ValueType.DOUBLE;
+	}
+	
+	public Function.ValueType getValueType() {return valueType;}
+	
 	public void evaluate(boolean doTrackTime) {
 		if(isStartNode) return;
-		this.value = func.execute(input0, input1);
+		
+		// Primitive-specialized functions are evaluated without boxing, anything else goes through the generic execute()
+		switch(func.getValueType()) {
+			case BOOLEAN:
+				this.longValue = ((BooleanFunction)func).evaluateBits(input0.longValue, input1.longValue);
+				this.valueType = Function.ValueType.BOOLEAN;
+				break;
+			case LONG:
+				setLongValue(((LongFunction)func).evaluateLong(input0.longValue, input1.longValue));
+				break;
+			case DOUBLE:
+				setDoubleValue(((DoubleFunction)func).evaluateDouble(input0.doubleValue, input1.doubleValue));
+				break;
+			default:
+				setValue(func.execute(input0, input1));
+		}
 	}
 	
 	public void evaluate() {
@@ -54,7 +115,7 @@ public class Node {
 	}
 	
 	public static void resetIDCounter() {
-		ID_COUNTER = 0;
+		ID_COUNTER.set(0);
 	}
 	
 	/*** Returns true if this node is connected to any start input nodes -- and also adds the nodes along the way to a set */
@@ -0,0 +1,70 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Rechenberg's 1/5th success rule applied to the mutation rate: after every generation the rate is multiplied by
+ * factor if more than a fifth of the offspring whose active genes changed were kept (they were at least as fit as
+ * their parent), and divided by it if fewer were. Offspring that only changed inactive genes are always kept and
+ * say nothing about the rate, so they don't count.
+ * Small rates on big grids then grow until mutations start to hurt, and disruptive rates shrink */
+public class OneFifthSuccessRule extends MutationRateController {
+
+	private static final double TARGET_SUCCESS = 0.2;
+
+	private double initialRate = 0;
+	private double factor = 0;
+	private volatile double rate = 0;
+	private int changed = 0; // offspring of the current generation whose active genes changed
+	private int successes = 0; // and that were kept
+
+	/*** Starts each run at initialRate. factor is above 1, e.g. 1.2 */
+	public OneFifthSuccessRule(double initialRate, double factor) {
+		if(factor <= 1) {
+			throw new IllegalArgumentException("Factor must be above 1: " + factor);
+		}
+		this.initialRate = initialRate;
+		this.factor = factor;
+		this.rate = initialRate;
+	}
+
+	public void prepare(CGP cgp) {
+		super.prepare(cgp);
+		rate = clamp(initialRate);
+		changed = 0;
+		successes = 0;
+	}
+
+	public double offspringRate(Individual parent, RandomGenerator random) {
+		return rate;
+	}
+
+	public void offspringEvaluated(Individual offspring, Individual parent) {
+		if(offspring.activeGenesChanged()) {
+			changed++;
+			if(offspring.isAtLeastAsFitAs(parent) && !offspring.isRejected()) {
+				successes++;
+			}
+		}
+	}
+
+	public void generationCompleted(GenerationStats stats) {
+		if(changed > 0) {
+			double successRate = successes / (double)changed;
+			if(successRate > TARGET_SUCCESS) {
+				rate = clamp(rate * factor);
+			}
+			else if(successRate < TARGET_SUCCESS) {
+				rate = clamp(rate / factor);
+			}
+		}
+		changed = 0;
+		successes = 0;
+	}
+
+	/*** Rate the next generation is bred with */
+	public double getRate() {return this.rate;}
+
+	public String toString() {
+		return "1/5th success rule, rate " + rate;
+	}
+}
@@ -0,0 +1,251 @@
+package Base;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/*** A Boolean circuit reduced to a straight-line program of two input gates by CircuitOptimizer, for running an
+ * evolved solution over large amounts of data.
+ *
+ * Inputs and outputs are bit-packed columns like the test cases of a BitParallelEvaluator: row r of the data is bit
+ * r % 64 of word r / 64. The program runs gate by gate over blocks of BLOCK_WORDS words (16384 rows), so every gate
+ * is one tight loop over arrays that the JIT can unroll and vectorize. Gate values live in a few scratch columns
+ * that are reused once a value isn't needed anymore, which keeps a block's working set in the cache.
+ *
+ * Immutable and safe to share between threads. */
+public class OptimizedCircuit {
+
+	private static final int BLOCK_WORDS = 256;
+	private static final String[] GATE_NAMES = {"FALSE", "NOR", "B_AND_NOT_A", "NOT", "A_AND_NOT_B", "NOT_B", "XOR", "NAND",
+			"AND", "XNOR", "B", "B_OR_NOT_A", "A", "A_OR_NOT_B", "OR", "TRUE"};
+
+	private int numInputs = 0;
+	private int[][] gates = null; // {truth table, a, b} in evaluation order, see CircuitOptimizer for the references
+	private int[] outputs = null; // reference of every output
+	private String[] gateNames = null; // by truth table, the function set's names or null
+	private int activeNodes = 0; // of the individual the circuit was optimized from
+
+	// Execution plan
+	private int[] slots = null; // scratch column each gate writes
+	private int numSlots = 0;
+
+	OptimizedCircuit(int numInputs, int[][] gates, int[] outputs, String[] gateNames, int activeNodes) {
+		this.numInputs = numInputs;
+		this.gates = gates;
+		this.outputs = outputs;
+		this.gateNames = gateNames;
+		this.activeNodes = activeNodes;
+		allocateSlots();
+	}
+
+	/*** Gives every gate a scratch column, reusing the columns of values no later gate or output reads */
+	private void allocateSlots() {
+		int firstGate = CircuitOptimizer.FIRST_INPUT + numInputs;
+		int[] lastUse = new int[gates.length];
+		for(int g = 0; g < gates.length; g++) {
+			for(int operand = 1; operand <= 2; operand++) {
+				if(gates[g][operand] >= firstGate) {
+					lastUse[gates[g][operand] - firstGate] = g;
+				}
+			}
+		}
+		for(int output : outputs) {
+			if(output >= firstGate) {
+				lastUse[output - firstGate] = gates.length; // outputs are read after the last gate
+			}
+		}
+
+		slots = new int[gates.length];
+		int[] free = new int[gates.length];
+		int numFree = 0;
+		for(int g = 0; g < gates.length; g++) {
+			// Operands read for the last time can be overwritten, gates are applied word by word
+			for(int operand = 1; operand <= 2; operand++) {
+				int reference = gates[g][operand];
+				if(reference >= firstGate && lastUse[reference - firstGate] == g && (operand == 1 || reference != gates[g][1])) {
+					free[numFree++] = slots[reference - firstGate];
+				}
+			}
+			slots[g] = numFree > 0 ? free[--numFree] : numSlots++;
+		}
+	}
+
+	/***
+	 * Computes words fromWord (inclusive) to toWord (exclusive) of the output columns from the same words of the
+	 * input columns. Both are indexed [column][word], outputs has a column per output
+	 * */
+	public void evaluate(long[][] inputs, long[][] outputColumns, int fromWord, int toWord) {
+		checkColumns(inputs, outputColumns);
+		long[][] scratch = new long[numSlots][BLOCK_WORDS];
+		for(int word = fromWord; word < toWord; word += BLOCK_WORDS) {
+			evaluateBlock(inputs, outputColumns, word, Math.min(BLOCK_WORDS, toWord - word), scratch);
+		}
+	}
+
+	/*** Computes the first numWords words of the output columns, splitting the words between the executor's threads */
+	public void evaluate(final long[][] inputs, final long[][] outputColumns, int numWords, ExecutorService executor) {
+		checkColumns(inputs, outputColumns);
+		int numBlocks = (numWords + BLOCK_WORDS - 1) / BLOCK_WORDS;
+		int blocksPerTask = Math.max(1, numBlocks / (4 * Runtime.getRuntime().availableProcessors()));
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int from = 0; from < numWords; from += blocksPerTask * BLOCK_WORDS) {
+			final int fromWord = from;
+			final int toWord = Math.min(numWords, from + blocksPerTask * BLOCK_WORDS);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					evaluate(inputs, outputColumns, fromWord, toWord);
+					return null;
+				}
+			});
+		}
+		try {
+			for(Future<Void> result : executor.invokeAll(tasks)) {
+				result.get();
+			}
+		} catch(InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while evaluating the circuit", ie);
+		} catch(ExecutionException ee) {
+			if(ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)ee.getCause();
+			}
+			throw new IllegalStateException("Circuit evaluation failed", ee.getCause());
+		}
+	}
+
+	/*** Computes the outputs of a single row of inputs */
+	public boolean[] evaluate(boolean... inputValues) {
+		if(inputValues.length != numInputs) {
+			throw new IllegalArgumentException("The circuit has " + numInputs + " inputs, not " + inputValues.length);
+		}
+		long[][] inputs = new long[numInputs][1];
+		for(int i = 0; i < numInputs; i++) {
+			inputs[i][0] = inputValues[i] ? 1 : 0;
+		}
+		long[][] outputColumns = new long[outputs.length][1];
+		evaluate(inputs, outputColumns, 0, 1);
+
+		boolean[] outputValues = new boolean[outputs.length];
+		for(int row = 0; row < outputs.length; row++) {
+			outputValues[row] = (outputColumns[row][0] & 1) != 0;
+		}
+		return outputValues;
+	}
+
+	private void checkColumns(long[][] inputs, long[][] outputColumns) {
+		if(inputs.length < numInputs || outputColumns.length < outputs.length) {
+			throw new IllegalArgumentException("The circuit needs " + numInputs + " input and " + outputs.length + " output columns");
+		}
+	}
+
+	private void evaluateBlock(long[][] inputs, long[][] outputColumns, int fromWord, int count, long[][] scratch) {
+		int firstGate = CircuitOptimizer.FIRST_INPUT + numInputs;
+		for(int g = 0; g < gates.length; g++) {
+			int[] gate = gates[g];
+			int a = gate[1], b = gate[2];
+			// Operands are never constants, the optimizer folds them
+			long[] aColumn = a >= firstGate ? scratch[slots[a - firstGate]] : inputs[a - CircuitOptimizer.FIRST_INPUT];
+			int aOffset = a >= firstGate ? 0 : fromWord;
+			long[] bColumn = b >= firstGate ? scratch[slots[b - firstGate]] : inputs[b - CircuitOptimizer.FIRST_INPUT];
+			int bOffset = b >= firstGate ? 0 : fromWord;
+			apply(gate[0], aColumn, aOffset, bColumn, bOffset, scratch[slots[g]], count);
+		}
+
+		for(int row = 0; row < outputs.length; row++) {
+			int output = outputs[row];
+			long[] column = outputColumns[row];
+			if(output <= CircuitOptimizer.TRUE) {
+				long value = output == CircuitOptimizer.TRUE ? -1L : 0L;
+				for(int i = 0; i < count; i++) {
+					column[fromWord + i] = value;
+				}
+			}
+			else if(output >= firstGate) {
+				System.arraycopy(scratch[slots[output - firstGate]], 0, column, fromWord, count);
+			}
+			else {
+				System.arraycopy(inputs[output - CircuitOptimizer.FIRST_INPUT], fromWord, column, fromWord, count);
+			}
+		}
+	}
+
+	/*** Applies a gate to count words, one loop per kind of gate so that each one is a plain bitwise loop */
+	private static void apply(int truthTable, long[] a, int aOffset, long[] b, int bOffset, long[] dest, int count) {
+		switch(truthTable) {
+			case 0x8: // AND
+				for(int i = 0; i < count; i++) dest[i] = a[aOffset + i] & b[bOffset + i];
+				break;
+			case 0xE: // OR
+				for(int i = 0; i < count; i++) dest[i] = a[aOffset + i] | b[bOffset + i];
+				break;
+			case 0x6: // XOR
+				for(int i = 0; i < count; i++) dest[i] = a[aOffset + i] ^ b[bOffset + i];
+				break;
+			case 0x7: // NAND
+				for(int i = 0; i < count; i++) dest[i] = ~(a[aOffset + i] & b[bOffset + i]);
+				break;
+			case 0x1: // NOR
+				for(int i = 0; i < count; i++) dest[i] = ~(a[aOffset + i] | b[bOffset + i]);
+				break;
+			case 0x9: // XNOR
+				for(int i = 0; i < count; i++) dest[i] = ~(a[aOffset + i] ^ b[bOffset + i]);
+				break;
+			case 0x4: // a & ~b
+				for(int i = 0; i < count; i++) dest[i] = a[aOffset + i] & ~b[bOffset + i];
+				break;
+			case 0x2: // ~a & b
+				for(int i = 0; i < count; i++) dest[i] = ~a[aOffset + i] & b[bOffset + i];
+				break;
+			case 0xD: // a | ~b
+				for(int i = 0; i < count; i++) dest[i] = a[aOffset + i] | ~b[bOffset + i];
+				break;
+			case 0xB: // ~a | b
+				for(int i = 0; i < count; i++) dest[i] = ~a[aOffset + i] | b[bOffset + i];
+				break;
+			case 0x3: // NOT, the only gate of one operand the optimizer builds
+				for(int i = 0; i < count; i++) dest[i] = ~a[aOffset + i];
+				break;
+			default:
+				for(int i = 0; i < count; i++) dest[i] = CircuitOptimizer.apply(truthTable, a[aOffset + i], b[bOffset + i]);
+		}
+	}
+
+	/*** Gates of the program, NOT gates included */
+	public int numberOfGates() {return gates.length;}
+
+	/*** Active nodes of the individual the circuit was optimized from */
+	public int getOriginalActiveNodes() {return activeNodes;}
+
+	public int numberOfInputs() {return numInputs;}
+	public int numberOfOutputs() {return outputs.length;}
+
+	public String toString() {
+		StringBuilder program = new StringBuilder();
+		for(int g = 0; g < gates.length; g++) {
+			int[] gate = gates[g];
+			program.append(valueName(CircuitOptimizer.FIRST_INPUT + numInputs + g)).append(" = ");
+			if(gate[0] == CircuitOptimizer.NOT_A && gate[1] == gate[2]) {
+				program.append("NOT(").append(valueName(gate[1])).append(")\n");
+			}
+			else {
+				String name = gateNames[gate[0]] != null ? gateNames[gate[0]] : GATE_NAMES[gate[0]];
+				program.append(name).append("(").append(valueName(gate[1])).append(", ").append(valueName(gate[2])).append(")\n");
+			}
+		}
+		for(int row = 0; row < outputs.length; row++) {
+			program.append("out").append(row).append(" = ").append(valueName(outputs[row])).append(row < outputs.length - 1 ? "\n" : "");
+		}
+		return program.toString();
+	}
+
+	private String valueName(int reference) {
+		if(reference == CircuitOptimizer.FALSE) return "false";
+		if(reference == CircuitOptimizer.TRUE) return "true";
+		if(reference < CircuitOptimizer.FIRST_INPUT + numInputs) return "in" + (reference - CircuitOptimizer.FIRST_INPUT);
+		return "g" + (reference - CircuitOptimizer.FIRST_INPUT - numInputs);
+	}
+}
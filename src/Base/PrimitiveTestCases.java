@@ -0,0 +1,79 @@
+package Base;
+
+/*** Unboxed copy of a CGP's test cases, used to evaluate primitive-specialized function sets without allocating.
+ * Booleans are held as all ones / all zeros longs, integral numbers as longs and any numbers as doubles */
+public class PrimitiveTestCases {
+	
+	private Function.ValueType valueType = null;
+	private long[][] longInputs = null;
+	private long[][] longOutputs = null;
+	private double[][] doubleInputs = null;
+	private double[][] doubleOutputs = null;
+	
+	private PrimitiveTestCases(Function.ValueType valueType) {
+		this.valueType = valueType;
+	}
+	
+	/*** Unboxes the test cases for the given value type. Returns null if some value doesn't fit that type */
+	public static PrimitiveTestCases of(Function.ValueType valueType, Object[][] testCaseInputs, Object[][] testCaseOutputs) {
+		PrimitiveTestCases testCases = new PrimitiveTestCases(valueType);
+		switch(valueType) {
+			case BOOLEAN:
+			case LONG:
+				testCases.longInputs = toLongs(valueType, testCaseInputs);
+				testCases.longOutputs = toLongs(valueType, testCaseOutputs);
+				return testCases.longInputs != null && testCases.longOutputs != null ? testCases : null;
+			case DOUBLE:
+				testCases.doubleInputs = toDoubles(testCaseInputs);
+				testCases.doubleOutputs = toDoubles(testCaseOutputs);
+				return testCases.doubleInputs != null && testCases.doubleOutputs != null ? testCases : null;
+			default:
+				return null;
+		}
+	}
+	
+	private static long[][] toLongs(Function.ValueType valueType, Object[][] values) {
+		long[][] longs = new long[values.length][];
+		for(int i = 0; i < values.length; i++) {
+			longs[i] = new long[values[i].length];
+			for(int j = 0; j < values[i].length; j++) {
+				Object value = values[i][j];
+				if(valueType == Function.ValueType.BOOLEAN && value instanceof Boolean) {
+					longs[i][j] = (Boolean)value ? -1L : 0L;
+				}
+				else if(valueType == Function.ValueType.LONG && isIntegral(value)) {
+					longs[i][j] = ((Number)value).longValue();
+				}
+				else {
+					return null;
+				}
+			}
+		}
+		return longs;
+	}
+	
+	private static boolean isIntegral(Object value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+	}
+	
+	private static double[][] toDoubles(Object[][] values) {
+		double[][] doubles = new double[values.length][];
+		for(int i = 0; i < values.length; i++) {
+			doubles[i] = new double[values[i].length];
+			for(int j = 0; j < values[i].length; j++) {
+				if(!(values[i][j] instanceof Number)) {
+					return null;
+				}
+				doubles[i][j] = ((Number)values[i][j]).doubleValue();
+			}
+		}
+		return doubles;
+	}
+	
+	public Function.ValueType getValueType() {return valueType;}
+	
+	public long[][] getLongInputs() {return longInputs;}
+	public long[][] getLongOutputs() {return longOutputs;}
+	public double[][] getDoubleInputs() {return doubleInputs;}
+	public double[][] getDoubleOutputs() {return doubleOutputs;}
+}
@@ -0,0 +1,54 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Starts on a small random sample of the test cases and enlarges it by growthFactor whenever the parent passes
+ * all of it, or after generationsPerStage generations on the same sample. Early generations, when individuals are
+ * far from a solution, cost very little while later ones see more and more of the test set.
+ * The sample only ever grows, test cases once sampled stay in it */
+public class ProgressiveSampling extends SamplingStrategy {
+
+	private int initialSize = 0;
+	private double growthFactor = 0;
+	private int generationsPerStage = 0;
+	private int[] order = null;
+	private int sampledWords = 0;
+	private int stageStart = 0; // generation the current sample was first used in
+	private TestCaseSample sample = null;
+
+	/*** Starts with initialSize test cases. 0 generationsPerStage only enlarges the sample once the parent passes it */
+	public ProgressiveSampling(int initialSize, double growthFactor, int generationsPerStage) {
+		if(growthFactor <= 1) {
+			throw new IllegalArgumentException("Growth factor must be above 1: " + growthFactor);
+		}
+		this.initialSize = initialSize;
+		this.growthFactor = growthFactor;
+		this.generationsPerStage = generationsPerStage;
+	}
+
+	public void prepare(CGP cgp) {
+		super.prepare(cgp);
+		this.sample = null;
+	}
+
+	public TestCaseSample nextSample(int generation, Individual parent, RandomGenerator random) {
+		if(sample == null) {
+			order = shuffledWords(random);
+			sampledWords = wordsFor(initialSize);
+		}
+		else {
+			boolean passed = parent != null && parent.getCachedFitness() >= sample.getNumTestCases();
+			boolean stageOver = generationsPerStage > 0 && generation - stageStart >= generationsPerStage;
+			if(!(passed || stageOver) || sampledWords == numWords) {
+				return sample;
+			}
+			sampledWords = Math.min(numWords, Math.max(sampledWords + 1, (int)(sampledWords * growthFactor)));
+		}
+		stageStart = generation;
+		sample = sampleOf(order, 0, sampledWords);
+		return sample;
+	}
+
+	/*** The sample currently evaluated on */
+	public TestCaseSample getSample() {return this.sample;}
+}
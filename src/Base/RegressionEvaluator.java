@@ -0,0 +1,254 @@
+package Base;
+
+import java.util.Arrays;
+
+/*** Scores symbolic regression individuals (DoubleFunction sets over DOUBLE test cases) column by column:
+ * each active node computes its values for a block of test cases in one DoubleFunction.evaluateColumn() call, and
+ * the outputs are reduced to an error with SIMD loops (see RegressionFunctions.isVectorized()).
+ * 
+ * The fitness is the number of hits, test cases whose outputs are all within tolerance of the expected outputs, so an
+ * individual that hits every test case solves the problem. The mean squared or absolute error over every output of
+ * every test case is recorded on the individual (see Individual.getError()) and decides between individuals with as
+ * many hits. Individuals producing NaN or infinite values get an infinite error.
+ * 
+ * Test cases are Object[][] Numbers or a DOUBLE TestCaseSource. Evaluation can't stop early. On a sample of the test
+ * cases (see SamplingStrategy) the error is the mean over the sampled test cases, and the sampled test cases hit are
+ * recorded in the individual's sample pass bits */
+public class RegressionEvaluator extends FitnessEvaluator {
+	
+	public static enum ErrorMeasure {
+		MSE, // mean squared error
+		MAE // mean absolute error
+	}
+	
+	private static final int BLOCK_TEST_CASES = 1024; // test cases evaluated at a time, so a node's column stays in cache
+	static final int ERROR_PARTIAL_SUMS = 8; // errors are summed in this many interleaved sums, the SIMD loop's lanes
+	
+	private ErrorMeasure errorMeasure = ErrorMeasure.MSE;
+	private double tolerance = 0;
+	
+	private DoubleFunction[] functions = null; // the CGP's function set, indexed like the function genes
+	private int numRows = 0;
+	private int numNodes = 0;
+	private int outputBase = 0; // address of the first output node
+	private int numInputs = 0;
+	private int numOutputs = 0;
+	private boolean[] outputsToIgnore = null;
+	private int numScoredOutputs = 0;
+	private int totalTestCases = 0;
+	private double[][] inputColumns = null; // [input][test case], null when streaming from a TestCaseSource
+	private double[][] outputColumns = null; // [output][test case], null when streaming from a TestCaseSource
+	private TestCaseSource source = null;
+	
+	// Node columns of the evaluating thread, indexed by address and allocated for the nodes that are ever active
+	private ThreadLocal<double[][]> workspace = new ThreadLocal<double[][]>();
+	private static final double[] NO_VALUES = new double[BLOCK_TEST_CASES]; // input of unwired nodes
+	
+	public RegressionEvaluator(ErrorMeasure errorMeasure, double tolerance) {
+		this.errorMeasure = errorMeasure;
+		this.tolerance = tolerance;
+	}
+	
+	public void prepare(CGP cgp) {
+		functions = new DoubleFunction[cgp.numberOfFunctions()];
+		for(int i = 0; i < functions.length; i++) {
+			Function<?> f = cgp.getFunction(i);
+			if(!(f instanceof DoubleFunction)) {
+				throw new IllegalStateException("Function " + f.getName() + " is not a DoubleFunction");
+			}
+			functions[i] = (DoubleFunction)f;
+		}
+		
+		this.numRows = cgp.numberOfRows();
+		this.numNodes = numRows * cgp.numberOfCols();
+		this.outputBase = numNodes - numRows;
+		this.outputsToIgnore = cgp.getOutputsToIgnore();
+		this.workspace = new ThreadLocal<double[][]>(); // the grid may have changed size
+		
+		this.source = cgp.getTestCaseSource();
+		if(source != null) {
+			if(source.getValueType() != Function.ValueType.DOUBLE) {
+				throw new IllegalStateException("Test case source holds " + source.getValueType() + " values instead of doubles");
+			}
+			this.totalTestCases = source.getNumTestCases();
+			this.numInputs = source.getNumInputs();
+			this.numOutputs = Math.min(source.getNumOutputs(), numRows);
+			this.inputColumns = null; // streamed from the source a block at a time
+			this.outputColumns = null;
+		}
+		else {
+			PrimitiveTestCases testCases = cgp.getPrimitiveTestCases();
+			if(cgp.getTestCaseInputs() == null) return; // test cases not set yet, we'll be called again when they are
+			if(testCases == null || testCases.getValueType() != Function.ValueType.DOUBLE) {
+				throw new IllegalStateException("Regression test cases have to be Numbers");
+			}
+			this.totalTestCases = testCases.getDoubleInputs().length;
+			this.inputColumns = columns(testCases.getDoubleInputs());
+			this.outputColumns = columns(testCases.getDoubleOutputs());
+			this.numInputs = inputColumns.length;
+			this.numOutputs = Math.min(outputColumns.length, numRows);
+		}
+		
+		this.numScoredOutputs = 0;
+		for(int output = 0; output < numOutputs; output++) {
+			if(!outputsToIgnore[output]) numScoredOutputs++;
+		}
+	}
+	
+	/*** Transposes [test case][value] rows to [value][test case] columns */
+	private static double[][] columns(double[][] rows) {
+		int width = rows.length > 0 ? rows[0].length : 0;
+		double[][] columns = new double[width][rows.length];
+		for(int tIndex = 0; tIndex < rows.length; tIndex++) {
+			for(int i = 0; i < width; i++) {
+				columns[i][tIndex] = rows[tIndex][i];
+			}
+		}
+		return columns;
+	}
+	
+	public int evaluate(Individual individual) {
+		return evaluate(individual, 0, null);
+	}
+	
+	/*** Evaluates the sample's runs of consecutive words a block at a time, or every test case if sample is null */
+	public int evaluate(Individual individual, int threshold, TestCaseSample sample) {
+		int[] schedule = individual.activeSchedule();
+		int[] genes = individual.genes;
+		double[][] columns = workspace();
+		double[] expected = source != null ? column(columns, numNodes) : null;
+		double[] maxError = column(columns, numNodes + 1);
+		boolean squared = errorMeasure == ErrorMeasure.MSE;
+		
+		int[] sampledWords = sample != null ? sample.getWords() : null;
+		int testCasesToEvaluate = sample != null ? sample.getNumTestCases() : totalTestCases;
+		long[] passBits = sample != null ? new long[sampledWords.length] : null;
+		int sampled = 0; // sampled test cases evaluated so far
+		
+		double errorSum = 0;
+		int hits = 0;
+		int wordsToEvaluate = sample != null ? sampledWords.length : (totalTestCases + 63) / 64;
+		for(int w = 0; w < wordsToEvaluate; ) {
+			// Runs of consecutive 64 test case words are evaluated a block at a time
+			int firstWord = sample != null ? sampledWords[w] : w;
+			int lastWord = firstWord;
+			for(w++; w < wordsToEvaluate && (sample == null || sampledWords[w] == lastWord + 1); w++) {
+				lastWord++;
+			}
+			int runStart = firstWord * 64;
+			int runEnd = Math.min((lastWord + 1) * 64, totalTestCases);
+			
+			for(int from = runStart; from < runEnd; from += BLOCK_TEST_CASES) {
+				int length = Math.min(BLOCK_TEST_CASES, runEnd - from);
+				
+				// The start nodes' columns hold the inputs
+				for(int row = 0; row < numRows; row++) {
+					double[] column = column(columns, row);
+					if(row >= numInputs) {
+						Arrays.fill(column, 0, length, 0);
+					}
+					else if(source != null) {
+						source.readDoubles(source.inputColumn(row), from, column, length);
+					}
+					else {
+						System.arraycopy(inputColumns[row], from, column, 0, length);
+					}
+				}
+				
+				for(int address : schedule) {
+					int geneIndex = address * Individual.GENES_PER_NODE;
+					int input0 = genes[geneIndex + Individual.INPUT0_GENE];
+					int input1 = genes[geneIndex + Individual.INPUT1_GENE];
+					functions[genes[geneIndex + Individual.FUNCTION_GENE]].evaluateColumn(
+							input0 != Individual.NO_GENE ? columns[input0] : NO_VALUES,
+							input1 != Individual.NO_GENE ? columns[input1] : NO_VALUES,
+							column(columns, address), length);
+				}
+				
+				Arrays.fill(maxError, 0, length, 0);
+				for(int output = 0; output < numOutputs; output++) {
+					if(outputsToIgnore[output]) continue;
+					double[] actual = columns[outputBase + output];
+					if(source != null) {
+						source.readDoubles(source.outputColumn(output), from, expected, length);
+						errorSum += sumErrors(actual, expected, 0, length, squared, maxError);
+					}
+					else {
+						errorSum += sumErrors(actual, outputColumns[output], from, length, squared, maxError);
+					}
+				}
+				hits += numScoredOutputs > 0 ? countWithin(maxError, length, tolerance) : length;
+				if(passBits != null) {
+					for(int i = 0; i < length; i++, sampled++) {
+						if(numScoredOutputs == 0 || maxError[i] <= tolerance) {
+							passBits[sampled >>> 6] |= 1L << (sampled & 63);
+						}
+					}
+				}
+			}
+		}
+		
+		double error = numScoredOutputs > 0 && testCasesToEvaluate > 0 ? errorSum / ((double)testCasesToEvaluate * numScoredOutputs) : 0;
+		individual.error = Double.isNaN(error) ? Double.POSITIVE_INFINITY : error;
+		individual.samplePassBits = passBits;
+		return hits;
+	}
+	
+	public boolean supportsSamples() {
+		return true;
+	}
+	
+	private static double sumErrors(double[] actual, double[] expected, int offset, int length, boolean squared, double[] maxError) {
+		if(RegressionFunctions.isVectorized()) {
+			return VectorKernels.sumErrors(actual, expected, offset, length, squared, maxError);
+		}
+		double[] partialSums = new double[ERROR_PARTIAL_SUMS];
+		for(int i = 0; i < length; i++) {
+			double difference = actual[i] - expected[offset + i];
+			double absolute = Math.abs(difference);
+			partialSums[i % ERROR_PARTIAL_SUMS] += squared ? difference * difference : absolute;
+			maxError[i] = Math.max(maxError[i], absolute);
+		}
+		return total(partialSums);
+	}
+	
+	/*** Adds up the partial sums of an error in order, the same way for the scalar and the SIMD loop */
+	static double total(double[] partialSums) {
+		double total = 0;
+		for(double partialSum : partialSums) {
+			total += partialSum;
+		}
+		return total;
+	}
+	
+	private static int countWithin(double[] values, int length, double tolerance) {
+		if(RegressionFunctions.isVectorized()) {
+			return VectorKernels.countWithin(values, length, tolerance);
+		}
+		int count = 0;
+		for(int i = 0; i < length; i++) {
+			if(values[i] <= tolerance) count++;
+		}
+		return count;
+	}
+	
+	/*** The evaluating thread's columns: one per node address, then the expected outputs and the per test case max error */
+	private double[][] workspace() {
+		double[][] columns = workspace.get();
+		if(columns == null) {
+			columns = new double[numNodes + 2][];
+			workspace.set(columns);
+		}
+		return columns;
+	}
+	
+	private static double[] column(double[][] columns, int index) {
+		if(columns[index] == null) {
+			columns[index] = new double[BLOCK_TEST_CASES];
+		}
+		return columns[index];
+	}
+	
+	public ErrorMeasure getErrorMeasure() {return errorMeasure;}
+	public double getTolerance() {return tolerance;}
+}
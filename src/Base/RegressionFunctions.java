@@ -0,0 +1,99 @@
+package Base;
+
+/*** Function set for symbolic regression, evaluated a whole column of test cases at a time by the RegressionEvaluator.
+ * When the JVM runs with --add-modules jdk.incubator.vector the columns are processed with SIMD instructions
+ * (see VectorKernels), otherwise with plain loops. Both give the same results, errors included, except that sin and
+ * cos may differ in the last bit, so seeded runs using them can evolve differently with and without the module
+ * 
+ * SIN and COS only use their first input, like unary nodes do in CGP */
+public final class RegressionFunctions {
+	
+	private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+	
+	/*** Divisors closer to zero than this make DIV return 1 (protected division) */
+	public static final double DIVISION_EPSILON = 1e-9;
+	
+	private RegressionFunctions() {
+	}
+	
+	/*** True if columns are evaluated with the Vector API */
+	public static boolean isVectorized() {return VECTORIZED;}
+	
+	public static final DoubleFunction ADD = new DoubleFunction("+") {
+		public double evaluateDouble(double a, double b) {
+			return a + b;
+		}
+		
+		public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+			if(VECTORIZED) VectorKernels.add(a, b, out, length);
+			else super.evaluateColumn(a, b, out, length);
+		}
+	};
+	
+	public static final DoubleFunction SUB = new DoubleFunction("-") {
+		public double evaluateDouble(double a, double b) {
+			return a - b;
+		}
+		
+		public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+			if(VECTORIZED) VectorKernels.subtract(a, b, out, length);
+			else super.evaluateColumn(a, b, out, length);
+		}
+	};
+	
+	public static final DoubleFunction MUL = new DoubleFunction("*") {
+		public double evaluateDouble(double a, double b) {
+			return a * b;
+		}
+		
+		public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+			if(VECTORIZED) VectorKernels.multiply(a, b, out, length);
+			else super.evaluateColumn(a, b, out, length);
+		}
+	};
+	
+	public static final DoubleFunction DIV = new DoubleFunction("/") {
+		public double evaluateDouble(double a, double b) {
+			return Math.abs(b) < DIVISION_EPSILON ? 1.0 : a / b;
+		}
+		
+		public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+			if(VECTORIZED) VectorKernels.protectedDivide(a, b, out, length, DIVISION_EPSILON);
+			else super.evaluateColumn(a, b, out, length);
+		}
+	};
+	
+	public static final DoubleFunction SIN = new DoubleFunction("sin") {
+		public double evaluateDouble(double a, double b) {
+			return Math.sin(a);
+		}
+		
+		public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+			if(VECTORIZED) VectorKernels.sin(a, out, length);
+			else super.evaluateColumn(a, b, out, length);
+		}
+	};
+	
+	public static final DoubleFunction COS = new DoubleFunction("cos") {
+		public double evaluateDouble(double a, double b) {
+			return Math.cos(a);
+		}
+		
+		public void evaluateColumn(double[] a, double[] b, double[] out, int length) {
+			if(VECTORIZED) VectorKernels.cos(a, out, length);
+			else super.evaluateColumn(a, b, out, length);
+		}
+	};
+	
+	/*** Adds +, -, *, protected / and optionally sin and cos to cgp */
+	public static void addTo(CGP cgp, boolean trigonometric) {
+		cgp.addFunction(ADD);
+		cgp.addFunction(SUB);
+		cgp.addFunction(MUL);
+		cgp.addFunction(DIV);
+		if(trigonometric) {
+			cgp.addFunction(SIN);
+			cgp.addFunction(COS);
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package Base;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/*** Picks the subset of the test cases each generation is evaluated on, so that huge test sets don't have to be
+ * evaluated in full for every offspring. Plug one in with CGP.setSamplingStrategy().
+ *
+ * The parent is re-scored on every new sample before its offspring are compared with it, and an individual that
+ * passes its whole sample is re-scored on the full test set before CGP.testEvolve() accepts it as a solution. */
+public abstract class SamplingStrategy {
+
+	int totalTestCases = 0;
+	int numWords = 0;
+
+	/*** Called when the strategy is attached to a CGP and whenever that CGP's test cases change */
+	public void prepare(CGP cgp) {
+		this.totalTestCases = cgp.getTotalTestCases();
+		this.numWords = (totalTestCases + 63) / 64;
+	}
+
+	/*** Returns the sample the next generation is evaluated on. parent is the current parent, scored on the
+	 * previous sample, or null when the sample is for the initial random individuals.
+	 * Draw any random numbers from random so that seeded runs are reproducible */
+	public abstract TestCaseSample nextSample(int generation, Individual parent, RandomGenerator random);
+
+	/*** True if the next parent should be picked by lexicase selection on the sample instead of by passed count */
+	public boolean isLexicase() {return false;}
+
+	/*** Number of words that hold at least the given number of test cases, between 1 and the whole test set */
+	int wordsFor(int testCases) {
+		return Math.max(1, Math.min(numWords, (testCases + 63) / 64));
+	}
+
+	/*** Every word of the test set in random order */
+	int[] shuffledWords(RandomGenerator random) {
+		int[] words = new int[numWords];
+		for(int i = 0; i < numWords; i++) {
+			int j = random.nextInt(i + 1);
+			words[i] = words[j];
+			words[j] = i;
+		}
+		return words;
+	}
+
+	/*** Samples count words of the given words starting at from */
+	TestCaseSample sampleOf(int[] words, int from, int count) {
+		int[] sampled = Arrays.copyOfRange(words, from, from + count);
+		Arrays.sort(sampled);
+		return new TestCaseSample(sampled, totalTestCases);
+	}
+}
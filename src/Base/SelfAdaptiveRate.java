@@ -0,0 +1,28 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Self-adaptive mutation rate: each offspring's rate is its parent's rate times exp(learningRate * N(0, 1)), and
+ * the rate is inherited along with the genes. Lineages carrying a rate that breeds fit offspring take over, so no
+ * schedule has to be chosen up front. Individuals that weren't bred with a rate, the initial random ones, start their
+ * lineage at initialRate */
+public class SelfAdaptiveRate extends MutationRateController {
+
+	private double initialRate = 0;
+	private double learningRate = 0;
+
+	/*** learningRate is the standard deviation of the log rate change per generation, e.g. 0.2 */
+	public SelfAdaptiveRate(double initialRate, double learningRate) {
+		this.initialRate = initialRate;
+		this.learningRate = learningRate;
+	}
+
+	public double offspringRate(Individual parent, RandomGenerator random) {
+		double parentRate = parent.getMutationRate() > 0 ? parent.getMutationRate() : initialRate;
+		return clamp(parentRate * Math.exp(learningRate * random.nextGaussian()));
+	}
+
+	public String toString() {
+		return "self-adaptive rate from " + initialRate;
+	}
+}
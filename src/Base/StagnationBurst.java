@@ -0,0 +1,72 @@
+package Base;
+
+import java.util.random.RandomGenerator;
+
+/*** Breeds with baseRate until the parent hasn't improved for stagnationGenerations generations, then with burstRate
+ * for burstGenerations generations to kick the lineage off a plateau, and back to baseRate. Improving during a burst
+ * ends it early */
+public class StagnationBurst extends MutationRateController {
+
+	private double baseRate = 0;
+	private double burstRate = 0;
+	private int stagnationGenerations = 0;
+	private int burstGenerations = 0;
+
+	private volatile double rate = 0;
+	private int bestFitness = -1; // of the fittest parent so far
+	private double bestError = 0;
+	private int stagnantGenerations = 0;
+	private int burstLeft = 0;
+	private int bursts = 0;
+
+	public StagnationBurst(double baseRate, double burstRate, int stagnationGenerations, int burstGenerations) {
+		this.baseRate = baseRate;
+		this.burstRate = burstRate;
+		this.stagnationGenerations = stagnationGenerations;
+		this.burstGenerations = burstGenerations;
+		this.rate = baseRate;
+	}
+
+	public void prepare(CGP cgp) {
+		super.prepare(cgp);
+		rate = baseRate;
+		bestFitness = -1;
+		bestError = 0;
+		stagnantGenerations = 0;
+		burstLeft = 0;
+		bursts = 0;
+	}
+
+	public double offspringRate(Individual parent, RandomGenerator random) {
+		return rate;
+	}
+
+	public void generationCompleted(GenerationStats stats) {
+		Individual parent = stats.getParent();
+		if(parent.getCachedFitness() > bestFitness || (parent.getCachedFitness() == bestFitness && parent.getError() < bestError)) {
+			bestFitness = parent.getCachedFitness();
+			bestError = parent.getError();
+			stagnantGenerations = 0;
+			burstLeft = 0;
+		}
+		else if(burstLeft > 0) {
+			burstLeft--;
+		}
+		else if(++stagnantGenerations >= stagnationGenerations) {
+			burstLeft = burstGenerations;
+			stagnantGenerations = 0;
+			bursts++;
+		}
+		rate = burstLeft > 0 ? burstRate : baseRate;
+	}
+
+	/*** True while the next generation is bred with the burst rate */
+	public boolean isBursting() {return this.burstLeft > 0;}
+
+	/*** Bursts triggered since the run started */
+	public int getBursts() {return this.bursts;}
+
+	public String toString() {
+		return "rate " + baseRate + ", bursts of " + burstRate + " after " + stagnationGenerations + " stagnant generations";
+	}
+}
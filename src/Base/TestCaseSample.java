@@ -0,0 +1,43 @@
+package Base;
+
+/*** A subset of the fitness test cases that a generation is evaluated on, see SamplingStrategy.
+ *
+ * Test cases are sampled in whole words of 64 consecutive test cases, the unit the bit-parallel evaluators work in,
+ * so a sample costs them exactly its share of the test set. Data sets whose order is correlated with the outputs
+ * should be shuffled before they're sampled.
+ *
+ * The sampled test cases are numbered 0 .. getNumTestCases()-1 in test set order; sampled test case i is bit i % 64
+ * of word i / 64 of an individual's sample pass bits. */
+public class TestCaseSample {
+
+	private int[] words = null; // sorted indexes of the sampled words
+	private int numTestCases = 0;
+
+	/*** Samples the given words (indexes of 64 test case words, in ascending order) of a test set */
+	public TestCaseSample(int[] words, int totalTestCases) {
+		int lastWord = (totalTestCases - 1) / 64;
+		for(int i = 0; i < words.length; i++) {
+			if(words[i] < 0 || words[i] > lastWord || (i > 0 && words[i] <= words[i - 1])) {
+				throw new IllegalArgumentException("Sampled words must be ascending word indexes of the test set");
+			}
+		}
+		this.words = words;
+		this.numTestCases = words.length * 64;
+		if(words.length > 0 && words[words.length - 1] == lastWord) {
+			this.numTestCases -= lastWord * 64 + 64 - totalTestCases; // the test set's last word may not be full
+		}
+	}
+
+	/*** Index in the test set of the i-th sampled test case */
+	public int testCase(int i) {
+		return words[i >>> 6] * 64 + (i & 63);
+	}
+
+	public int[] getWords() {return words;}
+	public int numberOfWords() {return words.length;}
+	public int getNumTestCases() {return numTestCases;}
+
+	public String toString() {
+		return numTestCases + " sampled test cases";
+	}
+}
@@ -0,0 +1,38 @@
+package Base;
+
+/*** Column oriented fitness test cases that don't have to live on the heap, see ColumnarTestCaseFile.
+ * Pass one to CGP.setFitnessTestCases(TestCaseSource) instead of Object[][] test cases.
+ *
+ * Columns 0 .. numInputs-1 hold the inputs and the following numOutputs columns the expected outputs.
+ * Every value has the source's value type: Boolean columns are bit-packed (test case t is bit t % 64 of
+ * word t / 64), integral and real columns hold one long or double per test case.
+ *
+ * The read methods copy a block of a column into dest and must be safe to call from several threads at once. */
+public abstract class TestCaseSource {
+
+	/*** BOOLEAN, LONG or DOUBLE */
+	public abstract Function.ValueType getValueType();
+
+	public abstract int getNumTestCases();
+	public abstract int getNumInputs();
+	public abstract int getNumOutputs();
+
+	/*** Copies count words of a Boolean column starting at word fromWord */
+	public abstract void readBits(int column, int fromWord, long[] dest, int count);
+
+	/*** Copies the values of count test cases of a LONG column starting at test case fromTestCase */
+	public abstract void readLongs(int column, int fromTestCase, long[] dest, int count);
+
+	/*** Copies the values of count test cases of a DOUBLE column starting at test case fromTestCase */
+	public abstract void readDoubles(int column, int fromTestCase, double[] dest, int count);
+
+	public int inputColumn(int input) {return input;}
+	public int outputColumn(int output) {return getNumInputs() + output;}
+
+	/*** Number of 64 test case words of a Boolean column */
+	public int getNumWords() {return (getNumTestCases() + 63) / 64;}
+
+	public String toString() {
+		return getValueType() + " test cases: " + getNumTestCases() + " x (" + getNumInputs() + " inputs, " + getNumOutputs() + " outputs)";
+	}
+}
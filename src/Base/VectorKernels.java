@@ -0,0 +1,118 @@
+package Base;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*** SIMD loops over double columns with the incubating Vector API, each with a scalar loop for the tail.
+ * Only ever loaded when the jdk.incubator.vector module is present (java --add-modules jdk.incubator.vector ...),
+ * callers check RegressionFunctions.isVectorized() first and fall back to plain loops otherwise */
+final class VectorKernels {
+	
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+	// Error sums are split over RegressionEvaluator.ERROR_PARTIAL_SUMS partial sums, which takes lanes that divide that number
+	private static final VectorSpecies<Double> SUM_SPECIES = SPECIES.length() <= RegressionEvaluator.ERROR_PARTIAL_SUMS ? SPECIES : DoubleVector.SPECIES_512;
+	
+	private VectorKernels() {
+	}
+	
+	static void add(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		}
+		for(; i < length; i++) {
+			out[i] = a[i] + b[i];
+		}
+	}
+	
+	static void subtract(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		}
+		for(; i < length; i++) {
+			out[i] = a[i] - b[i];
+		}
+	}
+	
+	static void multiply(double[] a, double[] b, double[] out, int length) {
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(out, i);
+		}
+		for(; i < length; i++) {
+			out[i] = a[i] * b[i];
+		}
+	}
+	
+	/*** a / b, or 1 where |b| is below epsilon */
+	static void protectedDivide(double[] a, double[] b, double[] out, int length, double epsilon) {
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			DoubleVector divisor = DoubleVector.fromArray(SPECIES, b, i);
+			VectorMask<Double> tooSmall = divisor.abs().compare(VectorOperators.LT, epsilon);
+			DoubleVector.fromArray(SPECIES, a, i).div(divisor).blend(1.0, tooSmall).intoArray(out, i);
+		}
+		for(; i < length; i++) {
+			out[i] = Math.abs(b[i]) < epsilon ? 1.0 : a[i] / b[i];
+		}
+	}
+	
+	static void sin(double[] a, double[] out, int length) {
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.SIN).intoArray(out, i);
+		}
+		for(; i < length; i++) {
+			out[i] = Math.sin(a[i]);
+		}
+	}
+	
+	static void cos(double[] a, double[] out, int length) {
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).lanewise(VectorOperators.COS).intoArray(out, i);
+		}
+		for(; i < length; i++) {
+			out[i] = Math.cos(a[i]);
+		}
+	}
+	
+	/*** Sum of the squared (or absolute) differences between actual[0 .. length) and expected[offset .. offset+length).
+	 * Also raises maxError[i] to the absolute difference of test case i.
+	 * Adds up the same partial sums in the same order as RegressionEvaluator's scalar loop, so the result is bit for bit
+	 * the same with or without the Vector API, whatever the vector size */
+	static double sumErrors(double[] actual, double[] expected, int offset, int length, boolean squared, double[] maxError) {
+		double[] partialSums = new double[RegressionEvaluator.ERROR_PARTIAL_SUMS]; // difference i goes to partial sum i % ERROR_PARTIAL_SUMS
+		int i = 0;
+		for(int upper = length - length % partialSums.length; i < upper; i += SUM_SPECIES.length()) {
+			DoubleVector difference = DoubleVector.fromArray(SUM_SPECIES, actual, i).sub(DoubleVector.fromArray(SUM_SPECIES, expected, offset + i));
+			DoubleVector absolute = difference.abs();
+			int partial = i % partialSums.length;
+			DoubleVector.fromArray(SUM_SPECIES, partialSums, partial).add(squared ? difference.mul(difference) : absolute).intoArray(partialSums, partial);
+			DoubleVector.fromArray(SUM_SPECIES, maxError, i).max(absolute).intoArray(maxError, i); // like Math.max(), NaN wins
+		}
+		for(; i < length; i++) {
+			double difference = actual[i] - expected[offset + i];
+			double absolute = Math.abs(difference);
+			partialSums[i % partialSums.length] += squared ? difference * difference : absolute;
+			maxError[i] = Math.max(maxError[i], absolute);
+		}
+		return RegressionEvaluator.total(partialSums);
+	}
+	
+	/*** Number of values[0 .. length) that are at most tolerance (NaN never is) */
+	static int countWithin(double[] values, int length, double tolerance) {
+		int count = 0;
+		int i = 0;
+		for(int upper = SPECIES.loopBound(length); i < upper; i += SPECIES.length()) {
+			count += DoubleVector.fromArray(SPECIES, values, i).compare(VectorOperators.LE, tolerance).trueCount();
+		}
+		for(; i < length; i++) {
+			if(values[i] <= tolerance) count++;
+		}
+		return count;
+	}
+}
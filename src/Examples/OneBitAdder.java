@@ -1,7 +1,12 @@
 package Examples;
 
+import java.io.IOException;
+import java.util.function.Supplier;
+
+import Base.BitParallelEvaluator;
+import Base.BooleanFunction;
 import Base.CGP;
-import Base.Function;
+import Base.DistributedEvaluator;
 import Base.Individual;
 import Base.Node;
 
@@ -12,27 +17,27 @@ public class OneBitAdder extends CGP {
 	}	
 	
 	public void initFunctions() {
-		Function<Boolean> XOR = new Function<Boolean>("XOR") {
-			public Boolean execute(Node a, Node b) {
-				return ((Boolean)a.value()) ^ ((Boolean)b.value());
+		BooleanFunction XOR = new BooleanFunction("XOR") {
+			public long evaluateBits(long a, long b) {
+				return a ^ b;
 			}
 		};
 		
-		Function<Boolean> OR = new Function<Boolean>("OR") {
-			public Boolean execute(Node a, Node b) {
-				return ((Boolean)a.value()) | ((Boolean)b.value());
+		BooleanFunction OR = new BooleanFunction("OR") {
+			public long evaluateBits(long a, long b) {
+				return a | b;
 			}
 		};
 		
-		Function<Boolean> AND = new Function<Boolean>("AND") {
-			public Boolean execute(Node a, Node b) {
-				return ((Boolean)a.value()) & ((Boolean)b.value());
+		BooleanFunction AND = new BooleanFunction("AND") {
+			public long evaluateBits(long a, long b) {
+				return a & b;
 			}
 		};
 		
-		Function<Boolean> NAND = new Function<Boolean>("NAND") {
-			public Boolean execute(Node a, Node b) {
-				return !(((Boolean)a.value()) & ((Boolean)b.value()));
+		BooleanFunction NAND = new BooleanFunction("NAND") {
+			public long evaluateBits(long a, long b) {
+				return ~(a & b);
 			}
 		};
 		
@@ -42,28 +47,48 @@ public class OneBitAdder extends CGP {
 		addFunction(NAND);
 	}
 	
-	public static void main(String[] args) {
-		OneBitAdder adder = new OneBitAdder();
-		
-		adder.setFitnessTestCases(
-				
-				// inputs
-				new Object[][] {
-					{false, false},
-					{false, true},
-					{true, false},
-					{true, true}
-				}, 				
-				
-				// expected outputs
-				new Object[][] {
-					{false, false},
-					{false, true},
-					{false, true},
-					{true, false}
-				});
+	/*** Builds the adder with its test cases, also in the worker processes of a distributed run */
+	public static class Setup implements Supplier<CGP> {
+		public CGP get() {
+			OneBitAdder adder = new OneBitAdder();
+			
+			adder.setFitnessTestCases(
+					
+					// inputs
+					new Object[][] {
+						{false, false},
+						{false, true},
+						{true, false},
+						{true, true}
+					}, 				
+					
+					// expected outputs
+					new Object[][] {
+						{false, false},
+						{false, true},
+						{false, true},
+						{true, false}
+					});
+			
+			// Evaluate 64 test cases at a time with bitwise ops
+			adder.setFitnessEvaluator(new BitParallelEvaluator());
+			return adder;
+		}
+	}
+	
+	/*** Pass a number of workers to evaluate the offspring in that many worker JVMs */
+	public static void main(String[] args) throws IOException {
+		CGP adder = new Setup().get();
 		
-		adder.testEvolve();	
+		if(args.length == 0) {
+			adder.testEvolve();
+			return;
+		}
 		
+		try(DistributedEvaluator workers = new DistributedEvaluator(Setup.class.getName())) {
+			workers.launchWorkers(Integer.parseInt(args[0]));
+			adder.setDistributedEvaluator(workers);
+			adder.testEvolve();
+		}
 	}
 }
@@ -0,0 +1,40 @@
+package Examples;
+
+import Base.CGP;
+import Base.RegressionEvaluator;
+import Base.RegressionFunctions;
+
+/*** Fits y = x^3 + x^2 + x on 1000 points in [-1, 1] (Koza's quartic-ish benchmark without the x^4 term).
+ * The second input is the constant 1, which the evolution can use to build other constants.
+ * Run with --add-modules jdk.incubator.vector to evaluate the columns with SIMD instructions */
+public class SymbolicRegression extends CGP {
+	
+	private static final int NUM_TEST_CASES = 1000;
+	
+	public SymbolicRegression() {
+		super(2, 30, 10);
+	}
+	
+	public void initFunctions() {
+		RegressionFunctions.addTo(this, false);
+	}
+	
+	public static void main(String[] args) {
+		SymbolicRegression regression = new SymbolicRegression();
+		
+		Object[][] inputs = new Object[NUM_TEST_CASES][];
+		Object[][] outputs = new Object[NUM_TEST_CASES][];
+		for(int tIndex = 0; tIndex < NUM_TEST_CASES; tIndex++) {
+			double x = -1 + 2.0 * tIndex / (NUM_TEST_CASES - 1);
+			inputs[tIndex] = new Object[] {x, 1.0};
+			outputs[tIndex] = new Object[] {x * x * x + x * x + x};
+		}
+		regression.setFitnessTestCases(inputs, outputs);
+		
+		// A test case is a hit when the output is within 0.01 of the expected one, the MSE ranks individuals with as many hits
+		regression.setFitnessEvaluator(new RegressionEvaluator(RegressionEvaluator.ErrorMeasure.MSE, 0.01));
+		
+		System.out.println(RegressionFunctions.isVectorized() ? "Evaluating with the Vector API" : "Evaluating with scalar loops");
+		regression.testEvolve();
+	}
+}
@@ -1,9 +1,8 @@
 package Examples;
 
+import Base.BitParallelEvaluator;
+import Base.BooleanFunction;
 import Base.CGP;
-import Base.Function;
-import Base.Individual;
-import Base.Node;
 import UI.Visualizer;
 
 public class TwoBitMultiplier extends CGP {
@@ -13,27 +12,27 @@ public class TwoBitMultiplier extends CGP {
 	}
 	
 	public void initFunctions() {
-		Function<Boolean> XOR = new Function<Boolean>("XOR") {
-			public Boolean execute(Node a, Node b) {
-				return ((Boolean)a.value()) ^ ((Boolean)b.value());
+		BooleanFunction XOR = new BooleanFunction("XOR") {
+			public long evaluateBits(long a, long b) {
+				return a ^ b;
 			}
 		};
 		
-		Function<Boolean> OR = new Function<Boolean>("OR") {
-			public Boolean execute(Node a, Node b) {
-				return ((Boolean)a.value()) | ((Boolean)b.value());
+		BooleanFunction OR = new BooleanFunction("OR") {
+			public long evaluateBits(long a, long b) {
+				return a | b;
 			}
 		};
 		
-		Function<Boolean> AND = new Function<Boolean>("AND") {
-			public Boolean execute(Node a, Node b) {
-				return ((Boolean)a.value()) & ((Boolean)b.value());
+		BooleanFunction AND = new BooleanFunction("AND") {
+			public long evaluateBits(long a, long b) {
+				return a & b;
 			}
 		};
 		
-		Function<Boolean> ANDi = new Function<Boolean>("ANDi") {
-			public Boolean execute(Node a, Node b) {
-				return !((Boolean)a.value()) & ((Boolean)b.value());
+		BooleanFunction ANDi = new BooleanFunction("ANDi") {
+			public long evaluateBits(long a, long b) {
+				return ~a & b;
 			}
 		};
 		
@@ -43,13 +42,6 @@ public class TwoBitMultiplier extends CGP {
 		addFunction(ANDi);
 	}
 	
-	public void postFitnessCalculation(Individual individual, int step) {
-	}
-	
-	public void postNodeEval(Node node, int step) {
-		
-	}
-	
 	public static void main(String[] args) {
 		TwoBitMultiplier multiplierCircuit = new TwoBitMultiplier();
 		
@@ -95,6 +87,9 @@ public class TwoBitMultiplier extends CGP {
 					{true,false,false,true}
 				});
 		
+		// Evaluate 64 test cases at a time with bitwise ops
+		multiplierCircuit.setFitnessEvaluator(new BitParallelEvaluator());
+		
 		multiplierCircuit.testEvolve();
 	}
 }
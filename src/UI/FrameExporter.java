@@ -0,0 +1,241 @@
+package UI;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import Base.EvolutionListener;
+import Base.GenerationStats;
+import Base.Individual;
+
+/*** Writes animation frames as numbered PNGs (frame_000000.png, frame_000001.png, ...) on a pool of background
+ * encoder threads.
+ * 
+ * Frames are painted or copied into pooled images, and the pool never holds more than a memory cap of images (even
+ * when the frame size changes), so however far the encoders fall behind, the frames in flight never take more than
+ * that cap. Frames come in two ways:
+ * - exportFrame() copies an already painted frame, e.g. from the Visualizer's render thread. It waits for a pooled
+ *   image when the cap is reached, which holds the render thread back and makes the Visualizer drop snapshots instead
+ * - submit() (or registering the exporter with CGP.addEvolutionListener()) queues a Snapshot that an encoder thread
+ *   paints itself. It never blocks, even while exportFrame() waits: when the queue is full or no image is free the
+ *   frame is dropped and counted, so evolution isn't slowed down. Needs no display, so runs can be recorded with
+ *   -Djava.awt.headless=true
+ * 
+ * Close the exporter to wait for the queued frames to be written. */
+public class FrameExporter implements EvolutionListener, Closeable {
+	
+	private static final int DEFAULT_QUEUE_CAPACITY = 64;
+	
+	private File outputDir = null;
+	private int width = 0;
+	private int height = 0;
+	private GridPainter painter = new GridPainter();
+	
+	// Image pool, guarded by its own monitor so that waiting for an image never holds up submit()
+	private final Object pool = new Object();
+	private ArrayDeque<BufferedImage> freeImages = new ArrayDeque<BufferedImage>();
+	private long pooledBytes = 0; // of the images allocated, free or in use
+	private long memoryCap = 0;
+	private ThreadPoolExecutor encoders = null;
+	
+	private long nextFrame = 0;
+	private AtomicLong writtenFrames = new AtomicLong();
+	private AtomicLong droppedFrames = new AtomicLong();
+	private volatile IOException error = null;
+	
+	/*** 
+	 * Exports width x height frames to outputDir (created if needed) with encoderThreads threads, keeping at most
+	 * memoryCap bytes of frames in flight. At least one frame per encoder thread has to fit in the cap
+	 * */
+	public FrameExporter(String outputDir, int width, int height, int encoderThreads, long memoryCap) throws IOException {
+		this.outputDir = new File(outputDir);
+		if(!this.outputDir.isDirectory() && !this.outputDir.mkdirs()) {
+			throw new IOException("Can't create frame output directory " + outputDir);
+		}
+		this.width = width;
+		this.height = height;
+		
+		long poolSize = memoryCap / bytesPerFrame(width, height);
+		if(poolSize < encoderThreads) {
+			throw new IllegalArgumentException("A " + memoryCap + " byte memory cap only fits " + poolSize + " " + width + "x" + height
+					+ " frames, at least one per encoder thread (" + encoderThreads + ") is needed");
+		}
+		int images = (int)Math.min(poolSize, Integer.MAX_VALUE);
+		this.memoryCap = memoryCap;
+		
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.encoders = new ThreadPoolExecutor(encoderThreads, encoderThreads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(DEFAULT_QUEUE_CAPACITY, images)), runnable -> {
+					Thread thread = new Thread(runnable, "CGP frame encoder " + threadNumber.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+	
+	private static long bytesPerFrame(int width, int height) {
+		return (long)width * height * 4; // TYPE_INT_ARGB
+	}
+	
+	/*** The painter used for submitted snapshots, e.g. to set the viewport or active-only mode of the recording */
+	public GridPainter getPainter() {return painter;}
+	
+	/*** Queues a snapshot to be painted and written as the next frame. Returns false if the frame was dropped */
+	public synchronized boolean submit(Snapshot snapshot) {
+		checkError();
+		long frame = nextFrame;
+		try {
+			encoders.execute(() -> {
+				BufferedImage image = pollImage(width, height);
+				if(image == null) {
+					droppedFrames.incrementAndGet(); // the pool is taken by exported frames, leaves a gap in the numbering
+					return;
+				}
+				try {
+					Graphics2D g2d = image.createGraphics();
+					try {
+						painter.paint(g2d, snapshot, width, height);
+					} finally {
+						g2d.dispose();
+					}
+					write(image, frame);
+				} finally {
+					releaseImage(image);
+				}
+			});
+		} catch(RejectedExecutionException ree) {
+			droppedFrames.incrementAndGet();
+			return false;
+		}
+		nextFrame++;
+		return true;
+	}
+	
+	/*** Copies a painted frame and queues it to be written as the next frame. Waits for a pooled image if the memory cap is reached */
+	public void exportFrame(BufferedImage frame) throws InterruptedException {
+		checkError();
+		BufferedImage image = takeImage(frame.getWidth(), frame.getHeight()); // without holding the lock submit() takes
+		frame.copyData(image.getRaster());
+		synchronized(this) {
+			long number = nextFrame;
+			try {
+				encoders.execute(() -> {
+					try {
+						write(image, number);
+					} finally {
+						releaseImage(image);
+					}
+				});
+			} catch(RejectedExecutionException ree) { // closed, or the queue is full of submitted snapshots
+				releaseImage(image);
+				droppedFrames.incrementAndGet();
+				return;
+			}
+			nextFrame++;
+		}
+	}
+	
+	public void generationCompleted(GenerationStats stats) {
+		submit(new Snapshot(stats.getParent(), null));
+	}
+	
+	public void runCompleted(Individual fittest, int generations) {
+		submit(new Snapshot(fittest, null));
+	}
+	
+	/*** Like pollImage(), but waits for an image to be released when the memory cap is reached */
+	private BufferedImage takeImage(int width, int height) throws InterruptedException {
+		synchronized(pool) {
+			BufferedImage image = pollImage(width, height);
+			while(image == null) {
+				pool.wait();
+				image = pollImage(width, height);
+			}
+			return image;
+		}
+	}
+	
+	/***
+	 * Takes a free pooled image of the given size, allocating one while the pool stays within the memory cap, or
+	 * returns null. Free images of another size (the frame was resized) are let go to make room. A single frame
+	 * bigger than the whole cap is still allocated once no other image is left, so a resize can't stop the export
+	 * */
+	private BufferedImage pollImage(int width, int height) {
+		synchronized(pool) {
+			BufferedImage image = freeImages.poll();
+			while(image != null) {
+				if(image.getWidth() == width && image.getHeight() == height) {
+					return image;
+				}
+				pooledBytes -= bytesPerFrame(image.getWidth(), image.getHeight());
+				image = freeImages.poll();
+			}
+			long bytes = bytesPerFrame(width, height);
+			if(pooledBytes == 0 || pooledBytes + bytes <= memoryCap) {
+				pooledBytes += bytes;
+				return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			}
+			return null;
+		}
+	}
+	
+	private void releaseImage(BufferedImage image) {
+		synchronized(pool) {
+			freeImages.push(image);
+			pool.notifyAll();
+		}
+	}
+	
+	private void write(BufferedImage image, long frame) {
+		File file = new File(outputDir, String.format("frame_%06d.png", frame));
+		try {
+			if(!ImageIO.write(image, "png", file)) {
+				throw new IOException("No PNG encoder available");
+			}
+			writtenFrames.incrementAndGet();
+		} catch(IOException ioe) {
+			if(error == null) {
+				error = new IOException("Writing " + file + " failed", ioe);
+			}
+		}
+	}
+	
+	private void checkError() {
+		if(error != null) {
+			throw new IllegalStateException("Frame export failed", error);
+		}
+	}
+	
+	public long getWrittenFrames() {return writtenFrames.get();}
+	
+	/*** Frames dropped because the encoders couldn't keep up, or because they arrived after the exporter was closed */
+	public long getDroppedFrames() {return droppedFrames.get();}
+	
+	/*** Frames queued or being written */
+	public int getPendingFrames() {return encoders.getQueue().size() + encoders.getActiveCount();}
+	
+	/*** Waits for every queued frame to be written. Throws the first write error, if any */
+	public void close() throws IOException {
+		encoders.shutdown();
+		try {
+			while(!encoders.awaitTermination(1, TimeUnit.SECONDS));
+		} catch(InterruptedException ie) {
+			encoders.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing frames", ie);
+		}
+		if(error != null) {
+			throw error;
+		}
+	}
+}
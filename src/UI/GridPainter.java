@@ -0,0 +1,353 @@
+package UI;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+
+import static Util.StringUtils.*;
+
+/*** Paints a Snapshot of an individual's grid with Java2D. Only ever touches the snapshot and the Graphics2D it's
+ * given, so it can paint off the event dispatch thread, e.g. on the Visualizer's render thread.
+ * 
+ * Grids are painted through a zoomable, pannable Viewport. Only the nodes inside the viewport and the connection
+ * lines touching them are painted, and text and connector nubs are left out when nodes get too small to read,
+ * so the time a frame takes depends on the size of the viewport rather than the size of the grid */
+public class GridPainter {
+	
+	/*** Which part of the grid is painted: the grid coordinates shown in the middle of the frame and the zoom factor
+	 * (screen pixels per grid unit, a node is 50 units wide). Immutable so it can be swapped from the EDT while the
+	 * render thread paints */
+	public static final class Viewport {
+		public final double centerX;
+		public final double centerY;
+		public final double zoom;
+		
+		public Viewport(double centerX, double centerY, double zoom) {
+			this.centerX = centerX;
+			this.centerY = centerY;
+			this.zoom = zoom;
+		}
+		
+		/*** This viewport zoomed by factor, keeping the grid point under screen position (x, y) of a width x height frame in place */
+		public Viewport zoomAt(double factor, double x, double y, int width, int height) {
+			double newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom * factor));
+			double gridX = centerX + (x - width / 2.0) / zoom;
+			double gridY = centerY + (y - height / 2.0) / zoom;
+			return new Viewport(gridX - (x - width / 2.0) / newZoom, gridY - (y - height / 2.0) / newZoom, newZoom);
+		}
+		
+		/*** This viewport moved by a drag of (dx, dy) screen pixels */
+		public Viewport pan(double dx, double dy) {
+			return new Viewport(centerX - dx / zoom, centerY - dy / zoom, zoom);
+		}
+	}
+	
+	static final double MIN_ZOOM = 0.001;
+	static final double MAX_ZOOM = 8;
+	static final double TEXT_MIN_ZOOM = 0.5; // below this node text and connector nubs are left out
+	static final double LINES_MIN_ZOOM = 0.05; // below this (nodes under ~2px) connection lines are left out
+	static final int MAX_OUTGOING_LINES = 4096; // lines drawn a frame from nodes in the frame to nodes outside it
+	
+	final double NODE_WIDTH = 50;
+	final double NODE_HEIGHT = 50;
+	final int inputsPerNode = 2;
+	final double paddingBetweenRows = 35; // should be fairly relative # of inputs nodes to accommodate non-messy connection lines 
+	final double paddingBetweenCols = 75; // should be fairly relative # of inputs nodes to accommodate non-messy connection lines 
+	
+	final int NODE_NUM_LINES = 2; // number of text lines (rows) that each node supports
+	
+	final Color BACKGROUND_COLOR = Color.BLACK;
+	final Color LINE_COLOR = Color.orange;
+	final Color NUB_COLOR = Color.white;
+	final Color NODE_BG_COLOR = Color.DARK_GRAY;
+	final Color NODE_BORDER_COLOR = Color.yellow;
+	final Color NODE_TEXT_COLOR = LINE_COLOR.brighter();
+	final Font NODE_TEXT_FONT = new Font("Arial", Font.BOLD, 14);
+	
+	final Color OUTPUT_LINE_COLOR = Color.green;
+	
+	private volatile Visualizer.Modes mode = Visualizer.Modes.HIGHLIGHT_ALL;
+	private volatile Viewport viewport = null; // null fits the whole grid in the frame
+	private volatile Viewport lastViewport = null; // the viewport of the last painted frame
+	private volatile boolean activeOnly = false;
+	
+	public void setMode(Visualizer.Modes mode) {
+		this.mode = mode;
+	}
+	
+	public Visualizer.Modes getMode() {return mode;}
+	
+	/*** Sets the part of the grid to paint. Pass null to fit the whole grid in the frame (zooming out only) */
+	public void setViewport(Viewport viewport) {
+		this.viewport = viewport;
+	}
+	
+	public Viewport getViewport() {return viewport;}
+	
+	/*** The viewport the last frame was painted with, a fitted one if no viewport was set. Null before the first frame */
+	public Viewport getLastViewport() {return lastViewport;}
+	
+	/*** When on, only the active nodes (those not in Individual.getInactiveNodes()) and their connections are painted */
+	public void setActiveOnly(boolean activeOnly) {
+		this.activeOnly = activeOnly;
+	}
+	
+	public boolean isActiveOnly() {return activeOnly;}
+	
+	private double colWidth() {return NODE_WIDTH + paddingBetweenCols;}
+	private double rowHeight() {return NODE_HEIGHT + paddingBetweenRows;}
+	
+	/*** Width and height of the whole grid in grid units */
+	public double gridWidth(Snapshot snapshot) {
+		return Math.max((snapshot.numberOfCols() * colWidth()) - paddingBetweenCols, 0);
+	}
+	
+	public double gridHeight(Snapshot snapshot) {
+		return Math.max((snapshot.numberOfRows() * rowHeight()) - paddingBetweenRows, 0);
+	}
+	
+	/*** Viewport centered on the grid, zoomed out just enough for it to fit in a width x height frame */
+	public Viewport fit(Snapshot snapshot, int width, int height) {
+		double gridWidth = gridWidth(snapshot);
+		double gridHeight = gridHeight(snapshot);
+		double zoom = Math.min(1, Math.min(width / (gridWidth + 2 * NODE_WIDTH), height / (gridHeight + 2 * NODE_HEIGHT)));
+		return new Viewport(gridWidth / 2, gridHeight / 2, Math.max(MIN_ZOOM, zoom));
+	}
+	
+	private int getNodeX(Snapshot snapshot, int address) {
+		int col = snapshot.colOf(address);
+		return (int)((col * NODE_WIDTH) + (col * paddingBetweenCols));
+	}
+	
+	private int getNodeY(Snapshot snapshot, int address) {
+		int row = snapshot.rowOf(address);
+		return (int)((row * NODE_HEIGHT) + (row * paddingBetweenRows));
+	}
+	
+	private Color getColor(Color color, Snapshot snapshot, int address, boolean isLine) {					
+		int dimCount = 4;
+		Color clr = color;
+		int currentNode = snapshot.getCurrentNode();
+		
+		// If mode is HIGHLIGHT_CURRENT_NODE_AND_ASSOCIATED_ENTITIES then we're only making the current node,
+		// and associated entities (outputs, connection lines, text, etc) stand out, dim everything not related
+		if(currentNode >= 0 && mode.equals(Visualizer.Modes.HIGHLIGHT_CURRENT_NODE_AND_ASSOCIATED_ENTITIES)) {
+			
+			boolean doDimming = false;
+			
+			if(currentNode != address) {
+				doDimming = true;
+				for(int i = 0; i < inputsPerNode; i++) {
+					if(!isLine && snapshot.getInput(currentNode, i) == address) {
+						// this node's output is wired to one of the currentNode's input, and it's not a line
+						doDimming = false;
+					}
+				}
+			}
+			
+			if(doDimming) {
+				while(0 < --dimCount) {
+					clr = clr.darker();
+				}
+			}
+		}
+		
+		return clr;
+	}
+	
+	private Color getColor(Color color, Snapshot snapshot, int address) {
+		return getColor(color, snapshot, address, false);
+	}
+	
+	private void drawLineText(Graphics2D g2d, String text, Snapshot snapshot, int address, Font font, int lineNum) {
+		double lineHeight = NODE_HEIGHT / NODE_NUM_LINES;
+		double textWidth = getStringWidth(g2d, text, font);
+		int textHeight = font.getSize();
+		
+		double nodeX = getNodeX(snapshot, address);
+		double nodeY = getNodeY(snapshot, address);
+		
+		g2d.drawString(text,	// the text to draw 
+						(int)((nodeX + NODE_WIDTH/2) - textWidth/2), // xpos of text (centered horizontally)
+						(int)(nodeY + lineHeight*lineNum + textHeight)); // ypos of text
+	}
+	
+	// Draw the node's text, which is just it's node type name
+	private void drawNodeText(Graphics2D g2d, Snapshot snapshot, int address, Font font) {
+		g2d.setColor(getColor(NODE_TEXT_COLOR, snapshot, address));
+		g2d.setFont(NODE_TEXT_FONT);	
+		
+		String text = snapshot.isStartNode(address) ? "INPUT" : snapshot.getFunctionName(address);
+		
+		// Show first line of text, which is either the function name or just "INPUT" which marks the first input node
+		drawLineText(g2d, text, snapshot, address, font, 0);
+		
+		// Show this node's current value, if it's being evaluated
+		String value = snapshot.getValue(address);
+		if(value != null) {
+			drawLineText(g2d, value, snapshot, address, font, 1);
+		}
+	}
+	
+	private void drawConnectionLine(Graphics2D g2d, Snapshot snapshot, int nodeInput, int outputNode, int inputIndex, boolean detailed) {
+		final double vSpaceBetweenInputs = NODE_HEIGHT / (inputsPerNode + 1);	
+		
+		double inputLevel = vSpaceBetweenInputs + (inputIndex * vSpaceBetweenInputs);
+		double outputLevel = vSpaceBetweenInputs * (inputsPerNode - inputIndex);
+		int nub = 6;
+		
+		int startX = getNodeX(snapshot, nodeInput);
+		int startY = (int) (getNodeY(snapshot, nodeInput) + inputLevel);
+		
+		int outputPlugX = (int)(getNodeX(snapshot, outputNode) + NODE_WIDTH);
+		int outputPlugY = (int)(getNodeY(snapshot, outputNode) + outputLevel);
+		
+		if(detailed) {
+			g2d.setColor(getColor(NUB_COLOR, snapshot, nodeInput, true));
+			
+			// Draw the input connector nub		
+			g2d.drawLine(startX, startY, startX - nub, startY);
+			
+			// Draw the output connector nub
+			g2d.drawLine(outputPlugX, outputPlugY, outputPlugX + nub, outputPlugY);
+		}
+		
+		g2d.setColor(getColor(LINE_COLOR, snapshot, nodeInput, true));
+		
+		// Draw the connection line spanning from the output node to the input connector
+		g2d.drawLine(startX - nub, startY, outputPlugX + nub, outputPlugY);
+	}
+	
+	// Draws the current state of the node in this animation
+	private void drawNode(Graphics2D g2d, Snapshot snapshot, int address, boolean detailed) {
+		int nodeX = getNodeX(snapshot, address);
+		int nodeY = getNodeY(snapshot, address);	
+		
+		// Paint background
+		g2d.setColor(getColor(NODE_BG_COLOR, snapshot, address));
+		g2d.fillRect(nodeX, nodeY, (int)NODE_WIDTH, (int)NODE_HEIGHT);
+		
+		// Set node color
+		g2d.setColor(getColor(NODE_BORDER_COLOR, snapshot, address));		
+		
+		// Draw node border
+		g2d.drawRect(nodeX, nodeY, (int)NODE_WIDTH, (int)NODE_HEIGHT);
+		
+		// Draw any text
+		if(detailed) {
+			drawNodeText(g2d, snapshot, address, NODE_TEXT_FONT);
+		}
+	}
+	
+	private void drawNodeConnectionLines(Graphics2D g2d, Snapshot snapshot, int address, boolean detailed) {
+		for(int i = 0; i < inputsPerNode; i++) {
+			int input = snapshot.getInput(address, i);
+			if(input >= 0) {
+				drawConnectionLine(g2d, snapshot, address, input, i, detailed);
+			}
+		}
+	}
+	
+	/*** Paints the snapshot into a width x height frame through the current viewport */
+	public void paint(Graphics2D g2d, Snapshot snapshot, int width, int height) {
+		g2d.setColor(BACKGROUND_COLOR);
+		g2d.fillRect(0, 0, width, height);
+		
+		Viewport view = viewport != null ? viewport : fit(snapshot, width, height);
+		lastViewport = view;
+		
+		int numRows = snapshot.numberOfRows();
+		int numCols = snapshot.numberOfCols();
+		
+		// The grid area inside the frame, widened by a nub on each side
+		double halfWidth = width / 2.0 / view.zoom;
+		double halfHeight = height / 2.0 / view.zoom;
+		int firstCol = clamp((int)Math.floor((view.centerX - halfWidth - NODE_WIDTH) / colWidth()), numCols);
+		int lastCol = clamp((int)Math.floor((view.centerX + halfWidth + NODE_WIDTH) / colWidth()), numCols);
+		int firstRow = clamp((int)Math.floor((view.centerY - halfHeight - NODE_HEIGHT) / rowHeight()), numRows);
+		int lastRow = clamp((int)Math.floor((view.centerY + halfHeight) / rowHeight()), numRows);
+		boolean detailed = view.zoom >= TEXT_MIN_ZOOM;
+		
+		AffineTransform transform = g2d.getTransform();
+		g2d.translate(width / 2.0, height / 2.0);
+		g2d.scale(view.zoom, view.zoom);
+		g2d.translate(-view.centerX, -view.centerY);
+		
+		// Connection lines get precendence and should be drawn first and behind everything so things don't get messy.
+		// Only lines touching a node in the frame are drawn: the inputs of the nodes in it, and the lines leaving them
+		// for nodes outside it, nearest first and at most MAX_OUTGOING_LINES a frame. Lines passing over the frame
+		// between two nodes outside it are left out, so the frame time depends on the nodes in the frame only
+		if(view.zoom >= LINES_MIN_ZOOM) {
+			int nodesInView = (lastCol - firstCol + 1) * (lastRow - firstRow + 1);
+			int outgoingPerNode = Math.max(1, MAX_OUTGOING_LINES / nodesInView);
+			for(int col = firstCol; col <= lastCol; col++) {
+				for(int row = firstRow; row <= lastRow; row++) {
+					int address = snapshot.address(col, row);
+					if(activeOnly && !snapshot.isActive(address)) continue;
+					drawNodeConnectionLines(g2d, snapshot, address, detailed);
+					
+					int outgoing = 0;
+					for(int i = 0; i < snapshot.numberOfConsumers(address) && outgoing < outgoingPerNode; i++) {
+						int consumer = snapshot.getConsumer(address, i) / inputsPerNode;
+						int consumerCol = snapshot.colOf(consumer);
+						int consumerRow = snapshot.rowOf(consumer);
+						boolean inView = consumerCol <= lastCol && consumerRow >= firstRow && consumerRow <= lastRow;
+						if(inView || (activeOnly && !snapshot.isActive(consumer))) continue;
+						drawConnectionLine(g2d, snapshot, consumer, address, snapshot.getConsumer(address, i) % inputsPerNode, detailed);
+						outgoing++;
+					}
+				}
+			}
+		}
+		
+		// Once nodes shrink below a pixel, blocks of nodes that share a pixel are filled in as one
+		int colStride = (int)Math.ceil(1 / (view.zoom * colWidth()));
+		int rowStride = (int)Math.ceil(1 / (view.zoom * rowHeight()));
+		if(colStride > 1 || rowStride > 1) {
+			drawNodeBlocks(g2d, snapshot, firstCol, lastCol, firstRow, lastRow, colStride, rowStride);
+		}
+		else {
+			for(int col = firstCol; col <= lastCol; col++) {
+				for(int row = firstRow; row <= lastRow; row++) {
+					int address = snapshot.address(col, row);
+					if(!activeOnly || snapshot.isActive(address)) {
+						drawNode(g2d, snapshot, address, detailed);
+					}
+				}
+			}
+		}
+		
+		g2d.setTransform(transform);
+	}
+	
+	private void drawNodeBlocks(Graphics2D g2d, Snapshot snapshot, int firstCol, int lastCol, int firstRow, int lastRow, int colStride, int rowStride) {
+		g2d.setColor(NODE_BORDER_COLOR);
+		firstCol -= firstCol % colStride;
+		firstRow -= firstRow % rowStride;
+		for(int col = firstCol; col <= lastCol; col += colStride) {
+			for(int row = firstRow; row <= lastRow; row += rowStride) {
+				if(anyNodeShown(snapshot, col, row, colStride, rowStride)) {
+					g2d.fillRect((int)(col * colWidth()), (int)(row * rowHeight()),
+							(int)((colStride - 1) * colWidth() + NODE_WIDTH), (int)((rowStride - 1) * rowHeight() + NODE_HEIGHT));
+				}
+			}
+		}
+	}
+	
+	private boolean anyNodeShown(Snapshot snapshot, int firstCol, int firstRow, int colStride, int rowStride) {
+		if(!activeOnly) return true;
+		int lastCol = Math.min(snapshot.numberOfCols(), firstCol + colStride);
+		int lastRow = Math.min(snapshot.numberOfRows(), firstRow + rowStride);
+		for(int col = firstCol; col < lastCol; col++) {
+			for(int row = firstRow; row < lastRow; row++) {
+				if(snapshot.isActive(snapshot.address(col, row))) return true;
+			}
+		}
+		return false;
+	}
+	
+	private static int clamp(int index, int count) {
+		return Math.max(0, Math.min(count - 1, index));
+	}
+}
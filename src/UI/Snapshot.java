@@ -0,0 +1,101 @@
+package UI;
+
+import Base.CGP;
+import Base.Individual;
+import Base.Node;
+
+/*** Immutable copy of what the Visualizer draws of an individual, taken on the evolving thread so the individual
+ * can go on being mutated while the copy is rendered on another thread. Nodes are kept by address (col * numRows + row) */
+public final class Snapshot {
+	
+	private final int numRows;
+	private final int numCols;
+	private final int levelsBack;
+	private final String[] functionNames; // null for start nodes
+	private final int[] inputs; // 2 per node, -1 when not wired
+	private final int[] firstConsumer; // per node, where its consumers start in consumers (numNodes + 1 entries)
+	private final int[] consumers; // the inputs (address * 2 + input) wired to each node, grouped by node in address order
+	private final boolean[] active;
+	private final String[] values; // null when the node holds no value
+	private final int currentNode; // address of the node being evaluated in the animation, -1 if none
+	private final int fitness;
+	private final int testCases;
+	
+	/*** Copies individual. currentNode is the node being evaluated (for animations) or null */
+	public Snapshot(Individual individual, Node currentNode) {
+		CGP cgp = individual.getCGP();
+		this.numRows = cgp.numberOfRows();
+		this.numCols = cgp.numberOfCols();
+		this.levelsBack = cgp.levelsBack();
+		int numNodes = numRows * numCols;
+		
+		this.functionNames = new String[numNodes];
+		this.inputs = new int[numNodes * 2];
+		this.active = new boolean[numNodes];
+		for(int address = 0; address < numNodes; address++) {
+			int function = individual.getFunctionGene(address);
+			functionNames[address] = function >= 0 ? cgp.getFunction(function).getName() : null;
+			inputs[address * 2] = individual.getInputGene(address, 0);
+			inputs[address * 2 + 1] = individual.getInputGene(address, 1);
+			active[address] = individual.isActive(address);
+		}
+		
+		// Reverse the input genes so a painter can find the lines leaving a node without going over the whole grid
+		this.firstConsumer = new int[numNodes + 1];
+		for(int input : inputs) {
+			if(input >= 0) firstConsumer[input + 1]++;
+		}
+		for(int address = 0; address < numNodes; address++) {
+			firstConsumer[address + 1] += firstConsumer[address];
+		}
+		this.consumers = new int[firstConsumer[numNodes]];
+		int[] next = firstConsumer.clone();
+		for(int slot = 0; slot < inputs.length; slot++) {
+			if(inputs[slot] >= 0) consumers[next[inputs[slot]]++] = slot;
+		}
+		
+		// Node values only exist while nodes are being evaluated one by one, i.e. during animations
+		this.values = new String[numNodes];
+		if(currentNode != null) {
+			Node[][] grid = individual.getGrid();
+			for(int col = 0; col < numCols; col++) {
+				for(int row = 0; row < numRows; row++) {
+					Object value = grid[col][row].value();
+					values[col * numRows + row] = value != null ? value.toString() : null;
+				}
+			}
+		}
+		this.currentNode = currentNode != null ? currentNode.getCol() * numRows + currentNode.getRow() : -1;
+		this.fitness = individual.getCachedFitness();
+		this.testCases = cgp.getTotalTestCases();
+	}
+	
+	public int numberOfRows() {return numRows;}
+	public int numberOfCols() {return numCols;}
+	public int numberOfNodes() {return functionNames.length;}
+	
+	/*** How many columns back a node's inputs may come from, bounds how far a connection line can reach */
+	public int levelsBack() {return levelsBack;}
+	
+	public int address(int col, int row) {return col * numRows + row;}
+	public int colOf(int address) {return address / numRows;}
+	public int rowOf(int address) {return address % numRows;}
+	
+	public boolean isStartNode(int address) {return address < numRows;}
+	public String getFunctionName(int address) {return functionNames[address];}
+	
+	/*** Address of the node wired to the given input of a node, -1 if it isn't wired */
+	public int getInput(int address, int input) {return inputs[address * 2 + input];}
+	
+	/*** How many node inputs are wired to a node */
+	public int numberOfConsumers(int address) {return firstConsumer[address + 1] - firstConsumer[address];}
+	
+	/*** The i-th node input wired to a node as address * 2 + input, nearest consumer first */
+	public int getConsumer(int address, int i) {return consumers[firstConsumer[address] + i];}
+	
+	public boolean isActive(int address) {return active[address];}
+	public String getValue(int address) {return values[address];}
+	public int getCurrentNode() {return currentNode;}
+	public int getFitness() {return fitness;}
+	public int getTestCases() {return testCases;}
+}
@@ -1,35 +1,56 @@
 package UI;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Font;
-import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
-import Base.CGP;
+import Base.EvolutionListener;
+import Base.GenerationStats;
 import Base.Individual;
 import Base.Node;
 
-import static Util.StringUtils.*;
+/*** Used to visualize what's going on during the CGP evolution.
+ * 
+ * Rendering never happens on the evolving thread: refreshState() only takes a Snapshot of the individual and hands
+ * it to a bounded queue that drops the oldest snapshot when it's full. A render thread paints the snapshots into an
+ * offscreen image at no more than the max frame rate, and the event dispatch thread only copies the latest finished
+ * image to the screen. Register the visualizer with CGP.addEvolutionListener() to watch each generation's parent.
+ * 
+ * The mouse wheel zooms, dragging pans, F fits the whole grid back in the window and A toggles painting only the
+ * active nodes.
+ * 
+ * startFrameExport() additionally writes every rendered frame as a numbered PNG to the frame output directory,
+ * see FrameExporter. For recording without a display use a FrameExporter on its own */
 
-/*** Used to visualize what's going on during the CGP evolution */
-
-public class Visualizer extends JFrame {
+public class Visualizer extends JFrame implements EvolutionListener {
 	
 	private static int DEFAULT_WIDTH = 500;
 	private static int DEFAULT_HEIGHT = 500;
+	private static int DEFAULT_QUEUE_CAPACITY = 4;
+	private static double DEFAULT_MAX_FRAME_RATE = 30;
+	private static int DEFAULT_ENCODER_THREADS = 2;
+	private static long DEFAULT_EXPORT_MEMORY_CAP = 64L * 1024 * 1024;
 	
 	private Canvas canvas = null;
 	
 	private String frameOutputDir = "./frameOutput/";
 	
-	private BufferedImage imageBuffer = null;
-	
 	private boolean debugOn = true;
 	
 	public static enum Modes {
@@ -37,231 +58,277 @@ public class Visualizer extends JFrame {
 		HIGHLIGHT_ALL
 	}
 	
-	private Modes mode = Modes.HIGHLIGHT_ALL;
+	private GridPainter painter = new GridPainter();
+	
+	private BlockingQueue<Snapshot> snapshots = null;
+	private AtomicLong droppedSnapshots = new AtomicLong();
+	private volatile long frameIntervalNanos = 0;
+	private volatile Snapshot lastSnapshot = null; // repainted when the window is resized
+	private long lastGenerationNanos = 0; // when generationCompleted() last took a snapshot (0 for never), on the evolving thread
+	
+	// The render thread paints into backBuffer and then swaps it with frontBuffer, which is all the EDT ever draws
+	private final Object frameLock = new Object();
+	private BufferedImage frontBuffer = null;
+	private BufferedImage backBuffer = null;
+	private volatile int frameWidth = DEFAULT_WIDTH;
+	private volatile int frameHeight = DEFAULT_HEIGHT;
+	
+	private Thread renderThread = null;
+	private volatile FrameExporter frameExporter = null;
+	private volatile FrameExporter failedExporter = null; // stopped after a write error, closed by stopFrameExport()
 
 	public Visualizer() {
+		this(DEFAULT_QUEUE_CAPACITY);
+	}
+	
+	/*** queueCapacity is the number of snapshots that may wait to be rendered before the oldest get dropped */
+	public Visualizer(int queueCapacity) {
+		this.snapshots = new ArrayBlockingQueue<Snapshot>(queueCapacity);
+		setMaxFrameRate(DEFAULT_MAX_FRAME_RATE);
+		
 		// For painting on screen
 		this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		this.setSize(DEFAULT_WIDTH, DEFAULT_HEIGHT);
 		this.setLayout(new BorderLayout());
 		this.add(canvas = new Canvas());
 		this.setTitle("CGP Visualizer");
-		this.setVisible(true);
 		
-		// For painting to an offscreen buffer that will be dumped to an image file
-		imageBuffer = new BufferedImage(DEFAULT_WIDTH, DEFAULT_HEIGHT, BufferedImage.TYPE_INT_ARGB);
-		Graphics2D graphics = (Graphics2D) imageBuffer.getGraphics();
-        graphics.setBackground(new Color(255, 255, 255, 0));
-        graphics.clearRect(0,0, (int)imageBuffer.getWidth(), (int)imageBuffer.getHeight());
+		canvas.addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e) {
+				frameWidth = Math.max(canvas.getWidth(), 1);
+				frameHeight = Math.max(canvas.getHeight(), 1);
+				redraw();
+			}
+		});
+		MouseAdapter navigation = new MouseAdapter() {
+			private int dragX = 0;
+			private int dragY = 0;
+			
+			public void mousePressed(MouseEvent e) {
+				dragX = e.getX();
+				dragY = e.getY();
+				canvas.requestFocusInWindow();
+			}
+			
+			public void mouseDragged(MouseEvent e) {
+				GridPainter.Viewport view = currentViewport();
+				if(view != null) {
+					setViewport(view.pan(e.getX() - dragX, e.getY() - dragY));
+				}
+				dragX = e.getX();
+				dragY = e.getY();
+			}
+			
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				GridPainter.Viewport view = currentViewport();
+				if(view != null) {
+					setViewport(view.zoomAt(Math.pow(1.2, -e.getPreciseWheelRotation()), e.getX(), e.getY(), frameWidth, frameHeight));
+				}
+			}
+		};
+		canvas.addMouseListener(navigation);
+		canvas.addMouseMotionListener(navigation);
+		canvas.addMouseWheelListener(navigation);
+		canvas.setFocusable(true);
+		canvas.addKeyListener(new KeyAdapter() {
+			public void keyPressed(KeyEvent e) {
+				if(e.getKeyCode() == KeyEvent.VK_F) {
+					setViewport(null);
+				}
+				else if(e.getKeyCode() == KeyEvent.VK_A) {
+					setActiveOnly(!painter.isActiveOnly());
+				}
+			}
+		});
+		
+		renderThread = new Thread(this::render, "CGP Visualizer renderer");
+		renderThread.setDaemon(true);
+		renderThread.start();
+		
+		this.setVisible(true);
 	}
 	
 	public void setMode(Modes mode) {
-		this.mode = mode;
+		painter.setMode(mode);
+		redraw();
+	}
+	
+	/*** Shows the given part of the grid, or the whole grid if viewport is null */
+	public void setViewport(GridPainter.Viewport viewport) {
+		painter.setViewport(viewport);
+		redraw();
+	}
+	
+	/*** Only paint the active nodes and their connections */
+	public void setActiveOnly(boolean activeOnly) {
+		painter.setActiveOnly(activeOnly);
+		redraw();
+	}
+	
+	private GridPainter.Viewport currentViewport() {
+		GridPainter.Viewport view = painter.getViewport();
+		return view != null ? view : painter.getLastViewport();
+	}
+	
+	/*** Paints the last snapshot again, e.g. after the viewport changed */
+	private void redraw() {
+		Snapshot snapshot = lastSnapshot;
+		if(snapshot != null) {
+			submit(snapshot);
+		}
+	}
+	
+	/*** Caps how often the render thread paints a frame, snapshots arriving faster than that queue up or get dropped */
+	public void setMaxFrameRate(double framesPerSecond) {
+		this.frameIntervalNanos = (long)(1e9 / framesPerSecond);
+	}
+	
+	public double getMaxFrameRate() {return 1e9 / frameIntervalNanos;}
+	
+	public void setFrameOutputDir(String frameOutputDir) {
+		this.frameOutputDir = frameOutputDir;
+	}
+	
+	public String getFrameOutputDir() {return frameOutputDir;}
+	
+	/*** Writes every rendered frame to the frame output directory with the default encoder threads and memory cap */
+	public FrameExporter startFrameExport() throws IOException {
+		return startFrameExport(DEFAULT_ENCODER_THREADS, DEFAULT_EXPORT_MEMORY_CAP);
+	}
+	
+	/*** 
+	 * Writes every rendered frame to the frame output directory as a numbered PNG. When the encoders fall behind the
+	 * render thread waits for them and the snapshot queue drops the oldest snapshots, so evolution never waits
+	 * */
+	public FrameExporter startFrameExport(int encoderThreads, long memoryCap) throws IOException {
+		stopFrameExport();
+		FrameExporter exporter = new FrameExporter(frameOutputDir, frameWidth, frameHeight, encoderThreads, memoryCap);
+		this.frameExporter = exporter;
+		return exporter;
 	}
 	
+	/*** Stops exporting frames and waits for the queued ones to be written. Throws the error that stopped the export early, if any */
+	public void stopFrameExport() throws IOException {
+		FrameExporter exporter = frameExporter;
+		frameExporter = null;
+		FrameExporter failed = failedExporter;
+		failedExporter = null;
+		try {
+			if(failed != null) {
+				failed.close(); // throws its write error
+			}
+		} finally {
+			if(exporter != null) {
+				exporter.close();
+			}
+		}
+	}
+	
+	/*** Number of snapshots dropped because the render thread couldn't keep up */
+	public long getDroppedSnapshots() {return droppedSnapshots.get();}
+	
 	public class Canvas extends JPanel {
 		
-		final double NODE_WIDTH = 50;
-		final double NODE_HEIGHT = 50;
-		final double inputsPerNode = 2;
-		final double paddingBetweenRows = 35; // should be fairly relative # of inputs nodes to accommodate non-messy connection lines 
-		final double paddingBetweenCols = 75; // should be fairly relative # of inputs nodes to accommodate non-messy connection lines 
-		
-		final int NODE_NUM_LINES = 2; // number of text lines (rows) that each node supports
-		
-		final Color LINE_COLOR = Color.orange;
-		final Color NUB_COLOR = Color.white;
-		final Color NODE_BG_COLOR = Color.DARK_GRAY;
-		final Color NODE_BORDER_COLOR = Color.yellow;
-		final Color NODE_TEXT_COLOR = LINE_COLOR.brighter();
-		final Font NODE_TEXT_FONT = new Font("Arial", Font.BOLD, 14);
-		
-		final Color OUTPUT_LINE_COLOR = Color.green;
-		
-		private Individual individual = null; // current individual
-		private Node currentNode = null; // the node currently switched on (being evaluated) in the animation
-		
-		private int getNodeX(Node node) {
-			return (int)((node.getCol() * NODE_WIDTH) + (node.getCol() * paddingBetweenCols));
+		public void paintComponent(Graphics g) {
+			synchronized(frameLock) {
+				if(frontBuffer != null) {
+					g.drawImage(frontBuffer, 0, 0, null);
+				}
+			}
 		}
-		
-		private int getNodeY(Node node) {
-			return (int)((node.getRow() * NODE_HEIGHT) + (node.getRow() * paddingBetweenRows));
+	}
+	
+	/*** Shows individual, with currentNode highlighted during animations (may be null). Never blocks */
+	public void refreshState(Individual individual, Node currentNode) {
+		submit(new Snapshot(individual, currentNode));
+	}
+	
+	/*** Queues a snapshot for rendering, dropping the oldest waiting snapshot if the queue is full */
+	public void submit(Snapshot snapshot) {
+		while(!snapshots.offer(snapshot)) {
+			if(snapshots.poll() != null) {
+				droppedSnapshots.incrementAndGet();
+			}
 		}
-		
-		private Color getColor(Color color, Node node, boolean isLine) {					
-			int dimCount = 4;
-			Color clr = color;
-			
-			// If mode is HIGHLIGHT_CURRENT_NODE_AND_ASSOCIATED_ENTITIES then we're only making the current node,
-			// and associated entities (outputs, connection lines, text, etc) stand out, dim everything not related
-			if(currentNode != null && mode.equals(Modes.HIGHLIGHT_CURRENT_NODE_AND_ASSOCIATED_ENTITIES)) {
-				
-				boolean doDimming = false;
+	}
+	
+	/*** Takes a snapshot at most once per frame interval, the generations in between would never be drawn anyway */
+	public void generationCompleted(GenerationStats stats) {
+		long now = System.nanoTime();
+		if(lastGenerationNanos != 0 && now - lastGenerationNanos < frameIntervalNanos) {
+			return;
+		}
+		lastGenerationNanos = now;
+		refreshState(stats.getParent(), null);
+	}
+	
+	public void runCompleted(Individual fittest, int generations) {
+		refreshState(fittest, null);
+	}
+	
+	private void render() {
+		long nextFrameNanos = System.nanoTime();
+		try {
+			while(!Thread.currentThread().isInterrupted()) {
+				Snapshot snapshot = snapshots.take();
 				
-				if(currentNode != node) {
-					doDimming = true;
-					for(int i = 0; i < inputsPerNode; i++) {
-						Node n = currentNode.getInput(i);
-						if(!isLine && n == node) {
-							// this node's output is wired to one of the currentNode's input, and it's not a line
-							doDimming = false;
-						}
-					}
+				long wait = nextFrameNanos - System.nanoTime();
+				if(wait > 0) {
+					TimeUnit.NANOSECONDS.sleep(wait);
 				}
+				nextFrameNanos = System.nanoTime() + frameIntervalNanos;
 				
-				if(doDimming) {
-					while(0 < --dimCount) {
-						clr = clr.darker();
+				BufferedImage frame = paintFrame(snapshot);
+				lastSnapshot = snapshot;
+				canvas.repaint();
+				
+				FrameExporter exporter = frameExporter;
+				if(exporter != null) {
+					try {
+						exporter.exportFrame(frame); // the render thread is the only one writing to frame
+					} catch(IllegalStateException ise) {
+						failedExporter = exporter; // a frame failed to write, stopFrameExport() reports why
+						frameExporter = null;
 					}
 				}
 			}
-			
-			return clr;
-		}
-		
-		private Color getColor(Color color, Node node) {
-			return getColor(color, node, false);
-		}
-		
-		private void drawLineText(Graphics2D g2d, String text, Node node, Font font, int lineNum) {
-			double lineHeight = NODE_HEIGHT / NODE_NUM_LINES;
-			double textWidth = getStringWidth(g2d, text, font);
-			int textHeight = font.getSize();
-			
-			double nodeX = getNodeX(node);
-			double nodeY = getNodeY(node);
-			
-			g2d.drawString(text,	// the text to draw 
-							(int)((nodeX + NODE_WIDTH/2) - textWidth/2), // xpos of text (centered horizontally)
-							(int)(nodeY + lineHeight*lineNum + textHeight)); // ypos of text
-		}
-		
-		// Draw the node's text, which is just it's node type name
-		private void drawNodeText(Graphics2D g2d, Node node, Font font) {
-			g2d.setColor(getColor(NODE_TEXT_COLOR, node));
-			g2d.setFont(NODE_TEXT_FONT);	
-			
-			String text = node.getType();
-			
-			if(node.isStartNode()) {
-				text = "INPUT";
-			}
-			
-			// Show first line of text, which is either the function name or just "INPUT" which marks the first input node
-			drawLineText(g2d, text, node, font, 0);
-			
-			// Show this node's current value
-			drawLineText(g2d, ""+node.value(), node, font, 1);						
-		}
-		
-		private void drawConnectionLine(Graphics2D g2d, Node nodeInput, Node outputNode, int inputIndex) {
-			final double vSpaceBetweenInputs = NODE_HEIGHT / (inputsPerNode + 1);	
-			
-			double inputLevel = vSpaceBetweenInputs + (inputIndex * vSpaceBetweenInputs);
-			double outputLevel = vSpaceBetweenInputs * (inputsPerNode - inputIndex);
-			int nub = 6;
-			
-			int startX = getNodeX(nodeInput);
-			int startY = (int) (getNodeY(nodeInput) + inputLevel);
-			
-			int outputPlugX = (int)(getNodeX(outputNode) + NODE_WIDTH);
-			int outputPlugY = (int)(getNodeY(outputNode) + outputLevel);
-			
-			g2d.setColor(getColor(NUB_COLOR, nodeInput, true));
-			
-			// Draw the input connector nub		
-			g2d.drawLine(startX, startY, startX - nub, startY);
-			
-			// Draw the output connector nub
-			g2d.drawLine(outputPlugX, outputPlugY, outputPlugX + nub, outputPlugY);
-			
-			g2d.setColor(getColor(LINE_COLOR, nodeInput, true));
-			
-			// Draw the connection line spanning from the output node to the input connector
-			g2d.drawLine(startX - nub, startY, outputPlugX + nub, outputPlugY);
+		} catch(InterruptedException ie) {
+			// disposed
 		}
-		
-		// Draws the current state of the node in this animation
-		private void drawNode(Graphics2D g2d, Node node, boolean doHighlight) {
-			int nodeX = getNodeX(node);
-			int nodeY = getNodeY(node);	
-			
-			// Paint background
-			g2d.setColor(getColor(NODE_BG_COLOR, node));
-			g2d.fillRect(nodeX, nodeY, (int)NODE_WIDTH, (int)NODE_HEIGHT);
-			
-			// Set node color
-			g2d.setColor(getColor(NODE_BORDER_COLOR, node));		
-			
-			// Draw node border
-			g2d.drawRect(nodeX, nodeY, (int)NODE_WIDTH, (int)NODE_HEIGHT);
-			
-			// Draw any text
-			drawNodeText(g2d, node, NODE_TEXT_FONT);		
+	}
+	
+	/*** Paints snapshot into the back buffer, swaps it to the front and returns it */
+	private BufferedImage paintFrame(Snapshot snapshot) {
+		int width = frameWidth;
+		int height = frameHeight;
+		if(backBuffer == null || backBuffer.getWidth() != width || backBuffer.getHeight() != height) {
+			backBuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
 		}
 		
-		private void drawNodeConnectionLines(Graphics2D g2d, Node node, boolean doHighlight) {
-			for(int i = 0; i < inputsPerNode; i++) {
-				Node input = node.getInput(i);
-				if(input != null) {
-					drawConnectionLine(g2d, node, input, i);
-				}
-			}
+		Graphics2D g2d = backBuffer.createGraphics();
+		try {
+			painter.paint(g2d, snapshot, width, height);
+		} finally {
+			g2d.dispose();
 		}
 		
-		public void paint(Graphics g) {
-			if(individual == null) return;
-			
-			Graphics2D g2d = (Graphics2D)g;
-			g2d.setColor(Color.BLACK);
-			g2d.fillRect(0, 0, getWidth(), getHeight());
-			
-			// Draw the state of all the nodes
-//			System.out.println("**1" + individual);					<<-- for debugging primarily
-//			System.out.println("**2" + individual.getCGP());		<<-- for debugging primarily
-			CGP cgp = individual.getCGP();
-			
-			int numRows = cgp.numberOfRows();
-			int numCols = cgp.numberOfCols();
-			
-			int gridHeight = (int)(Math.max((numRows * (NODE_HEIGHT + paddingBetweenRows)) - paddingBetweenRows, 0));
-			int gridWidth = (int)(Math.max((numCols * (NODE_WIDTH + paddingBetweenCols)) - paddingBetweenCols, 0));
-			
-			// Center the grid on the screen
-			int startX = getWidth()/2 - gridWidth/2;
-			int startY = getHeight()/2 - gridHeight/2;
-			
-			g2d.translate(startX, startY);
-			
-			Node[][] nodes = individual.getGrid();
-			
-			// Connection lines get precendence and should be drawn first and behind everything so things don't get messy
-			for(int x = 0; x < numCols; x++) {						
-				for(int y = 0; y < numRows; y++) {
-					// draw the current node
-					Node currentNode = nodes[y][x];
-					drawNodeConnectionLines(g2d, currentNode, true);
-				}
-			}
-			
-			for(int x = 0; x < numCols; x++) {						
-				for(int y = 0; y < numRows; y++) {
-					// draw the current node
-					Node currentNode = nodes[y][x];
-					drawNode(g2d, currentNode, true);					
-				}
-			}
-			
-			g2d.translate(-startX, -startY);
+		BufferedImage painted = backBuffer;
+		synchronized(frameLock) {
+			backBuffer = frontBuffer;
+			frontBuffer = painted;
 		}
+		return painted;
 	}
 	
-	public void refreshState(Individual individual, Node currentNode) {
-		canvas.individual = individual;		
-		canvas.currentNode = currentNode;		
-		canvas.paint(imageBuffer.getGraphics());		
-		repaint(); // will happen in async
+	/*** Also stops the render thread and any frame export, after the frames queued for export are written */
+	public void dispose() {
+		renderThread.interrupt();
+		try {
+			stopFrameExport();
+		} catch(IOException ioe) {
+			// the window is going away, nothing left to report to
+		}
+		super.dispose();
 	}
 	
 	// mainly used for debugging purposes